@@ -2,6 +2,7 @@ package com.monstro.librayapi.api;
 
 import com.monstro.librayapi.api.exception.ApiErrors;
 import com.monstro.librayapi.exception.BusinessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -31,6 +32,12 @@ public class ApplicationControllerAdvice {
         return  new ApiErrors(ex);
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ApiErrors handleOptimisticLockingFailure (OptimisticLockingFailureException ex){
+        return  new ApiErrors("Book was changed by another request");
+    }
+
     @ExceptionHandler(ResponseStatusException.class)
     @ResponseStatus
     public ResponseEntity handleResponseStatusException(ResponseStatusException ex){
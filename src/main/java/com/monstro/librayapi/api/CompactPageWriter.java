@@ -0,0 +1,43 @@
+package com.monstro.librayapi.api;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.monstro.librayapi.model.projection.BookSummary;
+import org.springframework.data.domain.Page;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a page of books as {@code {"page":0,"size":20,"totalElements":1,"content":[{...}]}} straight to the
+ * output, one row at a time, without building DTOs or serializing the {@code Pageable}/{@code Sort} structure.
+ */
+public class CompactPageWriter {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public void write(Page<BookSummary> page, OutputStream out) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+            // closing the generator flushes it; the output is the container's to close
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeNumberField("page", page.getNumber());
+            generator.writeNumberField("size", page.getSize());
+            generator.writeNumberField("totalElements", page.getTotalElements());
+            generator.writeArrayFieldStart("content");
+            for (BookSummary book : page) {
+                generator.writeStartObject();
+                if (book.getId() != null) {
+                    generator.writeNumberField("id", book.getId());
+                }
+                generator.writeStringField("title", book.getTitle());
+                generator.writeStringField("author", book.getAuthor());
+                generator.writeStringField("isbn", book.getIsbn());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
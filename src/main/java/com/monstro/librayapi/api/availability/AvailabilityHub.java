@@ -0,0 +1,380 @@
+package com.monstro.librayapi.api.availability;
+
+import com.monstro.librayapi.api.dto.AvailabilityDTO;
+import com.monstro.librayapi.config.jfr.RequestPhaseEvent;
+import com.monstro.librayapi.service.LoanChangedEvent;
+import com.monstro.librayapi.util.Isbn;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes book availability to server-sent-event subscribers as loans are created and returned, so kiosks and apps
+ * do not have to poll.
+ *
+ * Subscribers are indexed by ISBN (the ISBN-13 key when the value is a valid ISBN), so a change only visits the
+ * subscribers of its books. Each subscriber buffers at most one pending state per subscribed ISBN, the latest: a
+ * slow client skips intermediate states instead of growing a queue. Emitters are async requests, so an idle
+ * connection holds no thread; a small shared pool writes the pending states, one subscriber at a time, and sends a
+ * heartbeat comment every {@code library.availability.heartbeat} to find connections that went away.
+ *
+ * Writes block, so a client that stops reading holds its pool thread. A write that takes longer than
+ * {@code library.availability.send-timeout} drops its subscriber, which is completed with an error once the write
+ * returns, and the pool gets a thread in its place until then, at most {@code library.availability.stalled-threads}
+ * of them; the others keep being served.
+ *
+ * Publishes {@code library.availability.subscribers}, {@code .sent}, {@code .coalesced} and {@code .stalled}.
+ */
+@Component
+public class AvailabilityHub implements MeterBinder, DisposableBean {
+
+    public static final String EVENT = "availability";
+
+    /**
+     * The endpoint that writes to a stream are recorded under, as they run on the dispatcher threads.
+     */
+    static final String ENDPOINT = "GET /api/loan/availability";
+
+    private final int maxSubscribers;
+    private final int maxIsbns;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int maxStalledThreads;
+
+    private final Map<String, Set<Subscriber>> subscribersByIsbn = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final ThreadPoolTaskExecutor dispatcher = new ThreadPoolTaskExecutor();
+    private final ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong stalled = new AtomicLong();
+
+    /**
+     * Threads added in place of those held by stalled writes, guarded by {@code dispatcher}.
+     */
+    private int stalledThreads;
+
+    public AvailabilityHub(@Value("${library.availability.threads:2}") int threads,
+                           @Value("${library.availability.max-subscribers:10000}") int maxSubscribers,
+                           @Value("${library.availability.max-isbns:100}") int maxIsbns,
+                           @Value("${library.availability.timeout:PT30M}") Duration timeout,
+                           @Value("${library.availability.heartbeat:PT30S}") Duration heartbeat,
+                           @Value("${library.availability.send-timeout:PT5S}") Duration sendTimeout,
+                           @Value("${library.availability.stalled-threads:16}") int maxStalledThreads) {
+        this.maxSubscribers = maxSubscribers;
+        this.maxIsbns = maxIsbns;
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.maxStalledThreads = maxStalledThreads;
+        // a subscriber is queued at most once at a time, so the queue never holds more than the subscribers
+        dispatcher.setThreadNamePrefix("availability-");
+        dispatcher.setCorePoolSize(threads);
+        dispatcher.setMaxPoolSize(threads);
+        dispatcher.setQueueCapacity(maxSubscribers);
+        dispatcher.initialize();
+        heartbeats.setThreadNamePrefix("availability-heartbeat-");
+        heartbeats.initialize();
+        heartbeats.scheduleAtFixedRate(this::heartbeat, heartbeat);
+        heartbeats.scheduleAtFixedRate(this::dropStalled, sendTimeout);
+    }
+
+    /**
+     * Opens a stream of {@value #EVENT} events, one {@link AvailabilityDTO} per change of one of {@code isbns}, with
+     * the ISBN as it was subscribed.
+     *
+     * @throws ResponseStatusException 400 without ISBNs or with too many, 503 when there are too many subscribers
+     */
+    public SseEmitter subscribe(Collection<String> isbns) {
+        if (isbns == null || isbns.isEmpty() || isbns.size() > maxIsbns) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "subscribe to between 1 and " + maxIsbns + " isbns");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "too many availability subscribers, try again later");
+        }
+
+        Subscriber subscriber = new Subscriber(newEmitter(timeoutMillis));
+        for (String isbn : isbns) {
+            subscriber.isbnByKey.putIfAbsent(key(isbn), isbn);
+        }
+        subscribers.add(subscriber);
+        for (String key : subscriber.isbnByKey.keySet()) {
+            subscribersByIsbn.compute(key, (k, current) -> {
+                Set<Subscriber> set = current == null ? ConcurrentHashMap.newKeySet() : current;
+                set.add(subscriber);
+                return set;
+            });
+        }
+
+        subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+        subscriber.emitter.onError(error -> unsubscribe(subscriber));
+        return subscriber.emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanChanged(LoanChangedEvent event) {
+        boolean available = event.getChange() == LoanChangedEvent.Change.RETURNED;
+        for (String isbn : event.getIsbns()) {
+            publish(isbn, available);
+        }
+    }
+
+    /**
+     * Queues the availability of {@code isbn} for its subscribers, replacing a state they have not been sent yet.
+     */
+    public void publish(String isbn, boolean available) {
+        String key = key(isbn);
+        Set<Subscriber> targets = subscribersByIsbn.get(key);
+        if (targets == null) {
+            return;
+        }
+        for (Subscriber subscriber : targets) {
+            if (subscriber.offer(key, available)) {
+                coalesced.incrementAndGet();
+            }
+            schedule(subscriber);
+        }
+    }
+
+    public int getSubscribers() {
+        return subscribers.size();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getStalled() {
+        return stalled.get();
+    }
+
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue.set(true);
+            schedule(subscriber);
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * Sends what is pending for {@code subscriber} until nothing is left; only one thread drains a subscriber at a
+     * time, the one that flipped {@code scheduled}.
+     */
+    private void drain(Subscriber subscriber) {
+        try {
+            while (true) {
+                Map<String, Boolean> pending = subscriber.takePending();
+                boolean heartbeat = subscriber.heartbeatDue.getAndSet(false);
+                if (pending.isEmpty() && !heartbeat) {
+                    subscriber.scheduled.set(false);
+                    // an offer made after takePending saw scheduled still set and left it to this thread
+                    if ((!subscriber.hasPending() && !subscriber.heartbeatDue.get()) || !subscriber.scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                RequestPhaseEvent serialization = RequestPhaseEvent.begin(RequestPhaseEvent.SERIALIZATION, ENDPOINT);
+                if (pending.isEmpty()) {
+                    send(subscriber, SseEmitter.event().comment("heartbeat"));
+                }
+                for (Map.Entry<String, Boolean> entry : pending.entrySet()) {
+                    AvailabilityDTO update = new AvailabilityDTO(subscriber.isbnByKey.get(entry.getKey()), entry.getValue());
+                    send(subscriber, SseEmitter.event().name(EVENT).data(update, MediaType.APPLICATION_JSON));
+                    sent.incrementAndGet();
+                }
+                serialization.end(pending.size());
+            }
+        } catch (Exception e) {
+            // the client went away or the emitter timed out: drop it, the next heartbeat no longer sees it
+            unsubscribe(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+        synchronized (subscriber) {
+            subscriber.sendingSince = System.nanoTime();
+            subscriber.sending = true;
+        }
+        boolean stalledSend;
+        try {
+            subscriber.emitter.send(event);
+        } finally {
+            synchronized (subscriber) {
+                subscriber.sending = false;
+                stalledSend = subscriber.stalled;
+                if (subscriber.replaced) {
+                    subscriber.replaced = false;
+                    resizeDispatcher(-1);
+                }
+            }
+        }
+        if (stalledSend) {
+            throw new IOException("availability stream stalled for more than " + sendTimeoutNanos / 1_000_000 + "ms");
+        }
+    }
+
+    /**
+     * Drops the subscribers whose write has been blocked for longer than the send timeout, and gives the
+     * dispatcher a thread in place of each of theirs.
+     */
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                if (!subscriber.sending || subscriber.stalled || now - subscriber.sendingSince < sendTimeoutNanos) {
+                    continue;
+                }
+                subscriber.stalled = true;
+                subscriber.replaced = resizeDispatcher(1);
+            }
+            stalled.incrementAndGet();
+            unsubscribe(subscriber);
+        }
+    }
+
+    /**
+     * @return whether the dispatcher was resized; it does not grow beyond {@code maxStalledThreads} extra threads
+     */
+    private boolean resizeDispatcher(int delta) {
+        synchronized (dispatcher) {
+            if (delta > 0 && stalledThreads >= maxStalledThreads) {
+                return false;
+            }
+            stalledThreads += delta;
+            // the maximum never goes below the core size: raise it first, lower it last
+            if (delta > 0) {
+                dispatcher.setMaxPoolSize(dispatcher.getMaxPoolSize() + delta);
+                dispatcher.setCorePoolSize(dispatcher.getCorePoolSize() + delta);
+            } else {
+                dispatcher.setCorePoolSize(dispatcher.getCorePoolSize() + delta);
+                dispatcher.setMaxPoolSize(dispatcher.getMaxPoolSize() + delta);
+            }
+            return true;
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        for (String key : subscriber.isbnByKey.keySet()) {
+            subscribersByIsbn.computeIfPresent(key, (k, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private static String key(String isbn) {
+        long isbnKey = Isbn.toIsbn13(isbn);
+        return isbnKey == Isbn.INVALID ? isbn : Long.toString(isbnKey);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("library.availability.subscribers", this, AvailabilityHub::getSubscribers)
+                .description("Open availability streams")
+                .register(registry);
+        FunctionCounter.builder("library.availability.sent", this, AvailabilityHub::getSent)
+                .description("Availability changes sent to subscribers")
+                .register(registry);
+        FunctionCounter.builder("library.availability.coalesced", this, AvailabilityHub::getCoalesced)
+                .description("Availability changes replaced by a newer one before they were sent")
+                .register(registry);
+        FunctionCounter.builder("library.availability.stalled", this, AvailabilityHub::getStalled)
+                .description("Availability streams dropped because a write to them stalled")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        heartbeats.shutdown();
+        dispatcher.shutdown();
+        for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private static class Subscriber {
+
+        final SseEmitter emitter;
+
+        /**
+         * The subscribed ISBNs as they were sent, by key.
+         */
+        final Map<String, String> isbnByKey = new LinkedHashMap<>();
+
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean heartbeatDue = new AtomicBoolean();
+
+        // the write in progress, guarded by this subscriber: when it started, whether it was found stalled and
+        // whether the dispatcher got a thread in place of the one it holds
+        boolean sending;
+        long sendingSince;
+        boolean stalled;
+        boolean replaced;
+
+        private Map<String, Boolean> pending = new LinkedHashMap<>();
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * @return whether a state not sent yet was replaced
+         */
+        synchronized boolean offer(String key, boolean available) {
+            return pending.put(key, available) != null;
+        }
+
+        synchronized Map<String, Boolean> takePending() {
+            if (pending.isEmpty()) {
+                return pending;
+            }
+            Map<String, Boolean> taken = pending;
+            pending = new LinkedHashMap<>();
+            return taken;
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+    }
+}
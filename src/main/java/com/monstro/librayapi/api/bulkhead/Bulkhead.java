@@ -0,0 +1,191 @@
+package com.monstro.librayapi.api.bulkhead;
+
+import com.monstro.librayapi.config.datasource.ReadYourWritesGuard;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool of its own for one kind of expensive request, so a burst of them waits here instead of taking every
+ * servlet thread. At most {@code threads} run and {@code queueCapacity} wait; a request beyond that is answered
+ * with 503 right away, and one that does not finish within {@code timeout} is answered with 503 too and cancelled:
+ * dropped if it is still waiting, interrupted if it is running.
+ *
+ * Tasks run with the request attributes and the {@link ReadYourWritesGuard} client of the submitting thread.
+ *
+ * Publishes {@code library.bulkhead.active}, {@code .queued}, {@code .rejected} and {@code .timeouts}, tagged with
+ * the bulkhead name.
+ */
+public class Bulkhead implements MeterBinder, DisposableBean {
+
+    private final String name;
+    private final Duration timeout;
+    private final Semaphore permits;
+    private final ReadYourWritesGuard readYourWritesGuard;
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public Bulkhead(String name, int threads, int queueCapacity, Duration timeout) {
+        this(name, threads, queueCapacity, timeout, null);
+    }
+
+    /**
+     * @param readYourWritesGuard the guard of primary/replica routing, {@code null} without routing
+     */
+    public Bulkhead(String name, int threads, int queueCapacity, Duration timeout, ReadYourWritesGuard readYourWritesGuard) {
+        this.name = name;
+        this.timeout = timeout;
+        this.readYourWritesGuard = readYourWritesGuard;
+        // admission is decided here, so the executor's queue never fills up and never rejects
+        this.permits = new Semaphore(threads + queueCapacity);
+        executor.setThreadNamePrefix(name + "-bulkhead-");
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.initialize();
+    }
+
+    /**
+     * Runs {@code call} on this bulkhead, for a controller to return.
+     *
+     * @throws ResponseStatusException 503 when the bulkhead is full
+     */
+    public <T> WebAsyncTask<T> submit(Callable<T> call) {
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, name + " is busy, try again later");
+        }
+        Task<T> task = new Task<>(call, RequestContextHolder.getRequestAttributes(),
+                readYourWritesGuard == null ? null : readYourWritesGuard.getCurrentClient());
+
+        WebAsyncTask<T> asyncTask = new WebAsyncTask<>(timeout.toMillis(), executor, task);
+        asyncTask.onTimeout(() -> {
+            timeouts.incrementAndGet();
+            task.cancel();
+            throw new AsyncRequestTimeoutException();
+        });
+        // an error or a client that went away ends the request too; after a normal end there is nothing to cancel
+        asyncTask.onCompletion(task::cancel);
+        return asyncTask;
+    }
+
+    public int getQueued() {
+        return executor.getThreadPoolExecutor().getQueue().size();
+    }
+
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("library.bulkhead.active", this, Bulkhead::getActive)
+                .tag("bulkhead", name)
+                .description("Requests running on the bulkhead")
+                .register(registry);
+        Gauge.builder("library.bulkhead.queued", this, Bulkhead::getQueued)
+                .tag("bulkhead", name)
+                .description("Requests waiting for a bulkhead thread")
+                .register(registry);
+        FunctionCounter.builder("library.bulkhead.rejected", this, Bulkhead::getRejected)
+                .tag("bulkhead", name)
+                .description("Requests answered with 503 because the bulkhead was full")
+                .register(registry);
+        FunctionCounter.builder("library.bulkhead.timeouts", this, Bulkhead::getTimeouts)
+                .tag("bulkhead", name)
+                .description("Requests answered with 503 because they ran out of time")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * A submitted call and the context it runs with. It holds one permit, given back exactly once: when the call
+     * ends, or on {@link #cancel} if the call has not started yet (the executor may still run it, but it then
+     * returns right away). The worker thread is left uninterrupted, however late the cancel.
+     */
+    private class Task<T> implements Callable<T> {
+
+        private final Callable<T> call;
+        private final RequestAttributes attributes;
+        private final String client;
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private Thread runner;
+
+        Task(Callable<T> call, RequestAttributes attributes, String client) {
+            this.call = call;
+            this.attributes = attributes;
+            this.client = client;
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new CancellationException(name + " task was cancelled before it started");
+            }
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            RequestContextHolder.setRequestAttributes(attributes);
+            if (readYourWritesGuard != null) {
+                readYourWritesGuard.setCurrentClient(client);
+            }
+            try {
+                return call.call();
+            } finally {
+                if (readYourWritesGuard != null) {
+                    readYourWritesGuard.clearCurrentClient();
+                }
+                RequestContextHolder.resetRequestAttributes();
+                synchronized (this) {
+                    runner = null;
+                }
+                // a cancel that came after the call returned must not reach the worker's next task
+                Thread.interrupted();
+                permits.release();
+            }
+        }
+
+        void cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                permits.release();
+                return;
+            }
+            synchronized (this) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+    }
+}
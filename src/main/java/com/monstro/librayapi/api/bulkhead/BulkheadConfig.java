@@ -0,0 +1,27 @@
+package com.monstro.librayapi.api.bulkhead;
+
+import com.monstro.librayapi.config.datasource.ReadYourWritesGuard;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Bulkheads of the API. Point lookups and writes are cheap and stay on the servlet threads.
+ */
+@Configuration
+public class BulkheadConfig {
+
+    /**
+     * Paged searches: {@code like '%...%'} filters have to read every row.
+     */
+    @Bean
+    public Bulkhead searchBulkhead(@Value("${library.bulkhead.search.threads:4}") int threads,
+                                   @Value("${library.bulkhead.search.queue:16}") int queueCapacity,
+                                   @Value("${library.bulkhead.search.timeout:5s}") Duration timeout,
+                                   ObjectProvider<ReadYourWritesGuard> readYourWritesGuard) {
+        return new Bulkhead("search", threads, queueCapacity, timeout, readYourWritesGuard.getIfAvailable());
+    }
+}
@@ -0,0 +1,19 @@
+package com.monstro.librayapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookCompletionsDTO {
+
+    private List<BookFacetsDTO.FacetDTO> authors;
+
+    private List<BookFacetsDTO.FacetDTO> titles;
+}
@@ -0,0 +1,29 @@
+package com.monstro.librayapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookFacetsDTO {
+
+    private long total;
+
+    private List<FacetDTO> authors;
+
+    private List<FacetDTO> titles;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FacetDTO {
+        private String value;
+        private long count;
+    }
+}
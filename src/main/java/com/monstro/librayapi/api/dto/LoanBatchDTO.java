@@ -0,0 +1,24 @@
+package com.monstro.librayapi.api.dto;
+
+import com.monstro.librayapi.service.LoanBatchAction;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchDTO {
+
+    @NotNull
+    private LoanBatchAction action;
+
+    private List<Long> loanIds;
+
+    private List<String> isbns;
+}
@@ -0,0 +1,32 @@
+package com.monstro.librayapi.api.dto;
+
+import com.monstro.librayapi.service.LoanBatchItem;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchResultDTO {
+
+    private int applied;
+
+    private List<ItemDTO> items;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemDTO {
+
+        private String reference;
+
+        private Long loanId;
+
+        private LoanBatchItem.Outcome outcome;
+    }
+}
@@ -0,0 +1,163 @@
+package com.monstro.librayapi.api.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Results of create requests by {@code Idempotency-Key}, so a client retry gets the original result instead of
+ * running the request again.
+ *
+ * The first request with a key runs; a duplicate that arrives while it is still running waits for its result, at
+ * most {@code library.idempotency.wait-timeout}, then is answered with 409 to retry later. Only successful results
+ * are kept, for {@code library.idempotency.ttl} and at most {@code library.idempotency.max-entries} keys, oldest
+ * first out; a key whose request is still running is never dropped, so it cannot run twice. Reusing a key for a
+ * different request body is answered with 422. Keys are held per instance.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long waitTimeoutNanos;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    @Autowired
+    public IdempotencyStore(@Value("${library.idempotency.ttl:PT24H}") Duration ttl,
+                            @Value("${library.idempotency.max-entries:10000}") int maxEntries,
+                            @Value("${library.idempotency.wait-timeout:PT30S}") Duration waitTimeout) {
+        this(ttl, maxEntries, waitTimeout, System::nanoTime);
+    }
+
+    IdempotencyStore(Duration ttl, int maxEntries, Duration waitTimeout, LongSupplier nanoClock) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.waitTimeoutNanos = waitTimeout.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Runs {@code action} once per {@code scope} and {@code key}; without a key it just runs it.
+     *
+     * @param request what the key was sent with, compared with {@code equals} on a repeated key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String scope, String key, Object request, Supplier<T> action) {
+        if (key == null || key.isEmpty()) {
+            return action.get();
+        }
+        String storeKey = scope + ':' + key;
+        Entry entry;
+        boolean first;
+        synchronized (entries) {
+            long now = nanoClock.getAsLong();
+            evictExpired(now);
+            entry = entries.get(storeKey);
+            first = entry == null;
+            if (first) {
+                entry = new Entry(request, now + ttlNanos);
+                entries.put(storeKey, entry);
+                evictOverflow();
+            } else if (!Objects.equals(entry.request, request)) {
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        HEADER + " already used for a different request");
+            }
+        }
+
+        if (!first) {
+            return (T) await(entry.result);
+        }
+        try {
+            T result = action.get();
+            entry.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                entries.remove(storeKey, entry);
+            }
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Object await(CompletableFuture<Object> result) {
+        try {
+            return result.get(waitTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "a request with this " + HEADER + " is still running");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "interrupted while waiting for the first request");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void evictExpired(long now) {
+        // entries share one ttl, so insertion order is expiry order
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.expiresAt - now > 0) {
+                return;
+            }
+            if (entry.result.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest completed entries; running ones stay, even beyond {@code maxEntries}.
+     */
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            if (iterator.next().result.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object request;
+        private final long expiresAt;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Entry(Object request, long expiresAt) {
+            this.request = request;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,21 +1,35 @@
 package com.monstro.librayapi.api.resource;
 
+import com.monstro.librayapi.api.CompactPageWriter;
+import com.monstro.librayapi.api.bulkhead.Bulkhead;
+import com.monstro.librayapi.api.dto.BookCompletionsDTO;
 import com.monstro.librayapi.api.dto.BookDTO;
+import com.monstro.librayapi.api.dto.BookFacetsDTO;
 import com.monstro.librayapi.api.exception.ApiErrors;
+import com.monstro.librayapi.api.idempotency.IdempotencyStore;
+import com.monstro.librayapi.config.jfr.RequestPhaseEvent;
 import com.monstro.librayapi.exception.BusinessException;
 import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
 import com.monstro.librayapi.service.BookService;
+import com.monstro.librayapi.service.projection.BookCatalogProjection;
+import com.monstro.librayapi.service.projection.BookCompletions;
+import com.monstro.librayapi.service.projection.BookFacets;
 import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -24,58 +38,160 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/book")
 public class BookController {
 
+    /**
+     * Most values a facets or autocomplete answer may ask for.
+     */
+    static final int MAX_LIMIT = 100;
+
     private BookService bookService;
+    private BookCatalogProjection catalogProjection;
     private ModelMapper modelMapper;
+    private IdempotencyStore idempotencyStore;
+    private Bulkhead searchBulkhead;
+    private CompactPageWriter compactPageWriter = new CompactPageWriter();
 
-    public BookController(BookService bookService, ModelMapper modelMapper) {
+    public BookController(BookService bookService, BookCatalogProjection catalogProjection, ModelMapper modelMapper,
+                          IdempotencyStore idempotencyStore, Bulkhead searchBulkhead) {
         this.bookService = bookService;
+        this.catalogProjection = catalogProjection;
         this.modelMapper = modelMapper;
+        this.idempotencyStore = idempotencyStore;
+        this.searchBulkhead = searchBulkhead;
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public BookDTO create(@RequestBody  @Valid  BookDTO dto) {
-        Book entity = modelMapper.map(dto, Book.class);
-        entity = bookService.save(entity);
-
-        return modelMapper.map(entity, BookDTO.class);
+    public BookDTO create(@RequestBody  @Valid  BookDTO dto,
+                          @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute("book", idempotencyKey, dto, () -> {
+            RequestPhaseEvent mapping = RequestPhaseEvent.begin(RequestPhaseEvent.MAPPING);
+            Book entity = modelMapper.map(dto, Book.class);
+            mapping.end(1);
+            entity = bookService.save(entity);
+
+            mapping = RequestPhaseEvent.begin(RequestPhaseEvent.MAPPING);
+            BookDTO created = modelMapper.map(entity, BookDTO.class);
+            mapping.end(1);
+            return created;
+        });
     }
 
     @GetMapping("{id}")
     public BookDTO getById(@PathVariable Long id) {
-       return bookService.getById(id)
-               .map(book -> modelMapper.map(book, BookDTO.class))
+       return bookService.getSummaryById(id)
+               .map(this::toDTO)
                .orElseThrow(()-> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
     @GetMapping()
-    public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
+    public WebAsyncTask<Page<BookDTO>> find(BookDTO dto, Pageable pageRequest,
+                                            @RequestParam(defaultValue = "false") boolean availableOnly) {
         Book filter = modelMapper.map(dto, Book.class);
-        Page<Book> result = bookService.find(filter, pageRequest);
-        List<BookDTO> list = result.getContent()
-                .stream()
-                .map(entity -> modelMapper.map(entity, BookDTO.class))
-                .collect(Collectors.toList());
+        return searchBulkhead.submit(() -> {
+            Page<BookSummary> result = search(filter, pageRequest, availableOnly);
+            RequestPhaseEvent mapping = RequestPhaseEvent.begin(RequestPhaseEvent.MAPPING);
+            List<BookDTO> list = result.getContent()
+                    .stream()
+                    .map(this::toDTO)
+                    .collect(Collectors.toList());
+            mapping.end(list);
+
+            return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+        });
+    }
+
+    /**
+     * The page is written by the bulkhead task; the returned entity only completes the request.
+     */
+    @GetMapping(params = "compact=true")
+    public WebAsyncTask<ResponseEntity<Void>> findCompact(BookDTO dto, Pageable pageRequest,
+                                                          @RequestParam(defaultValue = "false") boolean availableOnly,
+                                                          HttpServletResponse response) {
+        Book filter = modelMapper.map(dto, Book.class);
+        return searchBulkhead.submit(() -> {
+            Page<BookSummary> result = search(filter, pageRequest, availableOnly);
+
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            RequestPhaseEvent serialization = RequestPhaseEvent.begin(RequestPhaseEvent.SERIALIZATION);
+            compactPageWriter.write(result, response.getOutputStream());
+            serialization.end(result);
+            return ResponseEntity.ok().<Void>build();
+        });
+    }
+
+    private Page<BookSummary> search(Book filter, Pageable pageRequest, boolean availableOnly) {
+        return availableOnly
+                ? bookService.findAvailableSummaries(filter, pageRequest)
+                : bookService.findSummaries(filter, pageRequest);
+    }
+
+    private BookDTO toDTO(BookSummary summary) {
+        return BookDTO.builder()
+                .id(summary.getId() == null ? null : Math.toIntExact(summary.getId()))
+                .title(summary.getTitle())
+                .author(summary.getAuthor())
+                .isbn(summary.getIsbn())
+                .build();
+    }
+
+    @GetMapping("facets")
+    public BookFacetsDTO facets(BookDTO dto, @RequestParam(defaultValue = "10") int limit) {
+        checkLimit(limit);
+        Book filter = modelMapper.map(dto, Book.class);
+        BookFacets facets = catalogProjection.facets(filter, limit);
+
+        return BookFacetsDTO.builder()
+                .total(facets.getTotal())
+                .authors(toFacetDTOs(facets.getAuthors()))
+                .titles(toFacetDTOs(facets.getTitles()))
+                .build();
+    }
 
-        return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+    /**
+     * Search-box suggestions: the authors and titles starting with {@code prefix} that have the most books. Served
+     * from memory, so it stays on the request thread.
+     */
+    @GetMapping("autocomplete")
+    public BookCompletionsDTO autocomplete(@RequestParam(defaultValue = "") String prefix,
+                                           @RequestParam(defaultValue = "10") int limit) {
+        checkLimit(limit);
+        BookCompletions completions = catalogProjection.complete(prefix, limit);
+
+        return BookCompletionsDTO.builder()
+                .authors(toFacetDTOs(completions.getAuthors()))
+                .titles(toFacetDTOs(completions.getTitles()))
+                .build();
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_LIMIT);
+        }
+    }
+
+    private List<BookFacetsDTO.FacetDTO> toFacetDTOs(List<BookFacets.FacetCount> counts) {
+        return counts.stream()
+                .map(count -> new BookFacetsDTO.FacetDTO(count.getValue(), count.getCount()))
+                .collect(Collectors.toList());
     }
 
     @DeleteMapping("{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deleteById(@PathVariable Long id) {
-       Book book = bookService.getById(id).orElseThrow(()-> new ResponseStatusException(HttpStatus.NOT_FOUND));
-       bookService.delete(book);
+       if(!bookService.deleteById(id)){
+           throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+       }
     }
 
     @PutMapping("{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public BookDTO updateBook(@PathVariable Long id,@RequestBody  @Valid  BookDTO dto) {
-        Book book = bookService.getById(id).orElseThrow(()-> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        book.setAuthor(dto.getAuthor());
-        book.setTitle(dto.getTitle());
-        book.setIsbn(dto.getIsbn());
-        book = bookService.update(book);
-        return modelMapper.map(book, BookDTO.class);
+        Book changes = Book.builder().title(dto.getTitle()).author(dto.getAuthor()).isbn(dto.getIsbn()).build();
+        Book book = bookService.updateById(id, changes).orElseThrow(()-> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        RequestPhaseEvent mapping = RequestPhaseEvent.begin(RequestPhaseEvent.MAPPING);
+        BookDTO updated = modelMapper.map(book, BookDTO.class);
+        mapping.end(1);
+        return updated;
     }
 
 
@@ -1,16 +1,27 @@
 package com.monstro.librayapi.api.resource;
 
+import com.monstro.librayapi.api.availability.AvailabilityHub;
+import com.monstro.librayapi.api.dto.LoanBatchDTO;
+import com.monstro.librayapi.api.dto.LoanBatchResultDTO;
 import com.monstro.librayapi.api.dto.LoanDTO;
+import com.monstro.librayapi.api.idempotency.IdempotencyStore;
+import com.monstro.librayapi.config.jfr.RequestPhaseEvent;
 import com.monstro.librayapi.model.entity.Book;
 import com.monstro.librayapi.model.entity.Loan;
 import com.monstro.librayapi.service.BookService;
+import com.monstro.librayapi.service.LoanBatchItem;
 import com.monstro.librayapi.service.LoanService;
 import org.modelmapper.ModelMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.validation.Valid;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/loan")
@@ -19,23 +30,58 @@ public class LoanController {
     private BookService bookService;
     private LoanService loanService;
     private ModelMapper modelMapper;
+    private IdempotencyStore idempotencyStore;
+    private AvailabilityHub availabilityHub;
 
-    public LoanController(BookService bookService,LoanService loanService, ModelMapper modelMapper) {
+    public LoanController(BookService bookService,LoanService loanService, ModelMapper modelMapper,
+                          IdempotencyStore idempotencyStore, AvailabilityHub availabilityHub) {
         this.bookService = bookService;
         this.loanService = loanService;
         this.modelMapper = modelMapper;
+        this.idempotencyStore = idempotencyStore;
+        this.availabilityHub = availabilityHub;
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public Long create(@RequestBody LoanDTO dto){
+    public Long create(@RequestBody LoanDTO dto,
+                       @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey){
+        return idempotencyStore.execute("loan", idempotencyKey, dto, () -> {
+            Book book = bookService.getByIsbn(dto.getIsbn()).orElseThrow(()->new ResponseStatusException(HttpStatus.BAD_REQUEST,"book not found for passed isbn"));
 
-        Book book = bookService.getByIsbn(dto.getIsbn()).orElseThrow(()->new ResponseStatusException(HttpStatus.BAD_REQUEST,"book not found for passed isbn"));
+            RequestPhaseEvent mapping = RequestPhaseEvent.begin(RequestPhaseEvent.MAPPING);
+            Loan loan = Loan.builder().book(book).customer(dto.getCustomer()).loanData(LocalDate.now()).build();
+            mapping.end(1);
 
-        Loan loan = Loan.builder().book(book).customer(dto.getCustomer()).loanData(LocalDate.now()).build();
+            loan = loanService.save(loan);
+            return  loan.getId();
+        });
+    }
+
+    @PostMapping("batch")
+    public LoanBatchResultDTO batch(@RequestBody @Valid LoanBatchDTO dto){
+        List<LoanBatchItem> items = loanService.applyBatch(dto.getAction(), dto.getLoanIds(), dto.getIsbns());
+
+        RequestPhaseEvent mapping = RequestPhaseEvent.begin(RequestPhaseEvent.MAPPING);
+        LoanBatchResultDTO result = LoanBatchResultDTO.builder()
+                .applied((int) items.stream()
+                        .filter(item -> item.getOutcome() == LoanBatchItem.Outcome.RETURNED
+                                || item.getOutcome() == LoanBatchItem.Outcome.RENEWED)
+                        .count())
+                .items(items.stream()
+                        .map(item -> new LoanBatchResultDTO.ItemDTO(item.getReference(), item.getLoanId(), item.getOutcome()))
+                        .collect(Collectors.toList()))
+                .build();
+        mapping.end(items);
+        return result;
+    }
 
-        loan = loanService.save(loan);
-        return  loan.getId();
+    /**
+     * Server-sent availability of the given books: an event each time one of them is lent or given back.
+     */
+    @GetMapping(path = "availability", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter availability(@RequestParam("isbn") List<String> isbns){
+        return availabilityHub.subscribe(isbns);
     }
 
 }
@@ -0,0 +1,40 @@
+package com.monstro.librayapi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.monstro.librayapi.config.jfr.RequestPhaseEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+/**
+ * Binary representations for service-to-service calls, picked by the {@code Accept} header:
+ * {@code application/cbor} and {@code application/x-jackson-smile}. Both reuse Boot's Jackson settings,
+ * so the documents have the same shape as the JSON ones.
+ *
+ * Every Jackson converter, JSON included, records writing the body as a {@link RequestPhaseEvent}.
+ */
+@Configuration
+public class MessageConverterConfig {
+
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        return new RecordingJackson2HttpMessageConverter(objectMapper,
+                MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+
+    @Bean
+    public MappingJackson2HttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new RecordingJackson2HttpMessageConverter(builder.factory(new CBORFactory()).build(),
+                MediaType.APPLICATION_CBOR);
+    }
+
+    @Bean
+    public MappingJackson2HttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new RecordingJackson2HttpMessageConverter(builder.factory(new SmileFactory()).build(),
+                new MediaType("application", "x-jackson-smile"));
+    }
+}
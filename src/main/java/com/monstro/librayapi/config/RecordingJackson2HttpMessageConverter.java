@@ -0,0 +1,30 @@
+package com.monstro.librayapi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monstro.librayapi.config.jfr.RequestPhaseEvent;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+/**
+ * Jackson converter for the given media types that records writing the body as a {@link RequestPhaseEvent}. The
+ * object mapper's factory picks the format: JSON, CBOR or Smile.
+ */
+class RecordingJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    RecordingJackson2HttpMessageConverter(ObjectMapper objectMapper, MediaType... supportedMediaTypes) {
+        super(objectMapper);
+        setSupportedMediaTypes(Arrays.asList(supportedMediaTypes));
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.SERIALIZATION);
+        super.writeInternal(object, type, outputMessage);
+        event.end(object);
+    }
+}
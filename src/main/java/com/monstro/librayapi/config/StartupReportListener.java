@@ -0,0 +1,45 @@
+package com.monstro.librayapi.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Logs how long the context took to become ready and how much heap it holds at that point,
+ * so the startup benchmark can compare runs with and without the {@code startup} profile.
+ *
+ * When {@code library.startup.training-run} is set the JVM exits right after startup, which is
+ * what the CDS training run needs to dump its class list.
+ */
+@Component
+public class StartupReportListener implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupReportListener.class);
+
+    private final boolean trainingRun;
+
+    public StartupReportListener(@Value("${library.startup.training-run:false}") boolean trainingRun) {
+        this.trainingRun = trainingRun;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+        log.info("Startup report: ready after {} ms, heap used {} bytes, heap committed {} bytes",
+                uptime, heap.getUsed(), heap.getCommitted());
+
+        if (trainingRun) {
+            log.info("Training run finished, shutting down");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.monstro.librayapi.config.datasource;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Tells the {@link ReadYourWritesGuard} who is calling: the {@code X-Client-Id} header, or the remote address.
+ */
+public class ClientIdentityFilter extends OncePerRequestFilter {
+
+    static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private final ReadYourWritesGuard guard;
+
+    public ClientIdentityFilter(ReadYourWritesGuard guard) {
+        this.guard = guard;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String client = request.getHeader(CLIENT_ID_HEADER);
+        guard.setCurrentClient(client != null ? client : request.getRemoteAddr());
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            guard.clearCurrentClient();
+        }
+    }
+}
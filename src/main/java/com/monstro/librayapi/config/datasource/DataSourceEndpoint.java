@@ -0,0 +1,24 @@
+package com.monstro.librayapi.config.datasource;
+
+import lombok.Data;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+
+import javax.sql.DataSource;
+
+/**
+ * Connection settings of one database when the application talks to more than one.
+ */
+@Data
+public class DataSourceEndpoint {
+    private String url;
+    private String username;
+    private String password;
+
+    public DataSource build() {
+        return DataSourceBuilder.create()
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+    }
+}
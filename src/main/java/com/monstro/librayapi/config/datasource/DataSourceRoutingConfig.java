@@ -0,0 +1,76 @@
+package com.monstro.librayapi.config.datasource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Primary/replica routing, enabled with {@code library.datasource.routing.enabled=true}:
+ *
+ * <pre>
+ * library.datasource.routing.primary.url=jdbc:...
+ * library.datasource.routing.replicas[0].url=jdbc:...
+ * </pre>
+ *
+ * Read-only transactions ({@code BookService.getById}, {@code getByIsbn}, {@code find}) use the replicas.
+ * Needs {@code spring.jpa.open-in-view=false}, otherwise the first transaction of a request picks the connection
+ * for all of them.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "library.datasource.routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(RoutingDataSourceProperties.class)
+public class DataSourceRoutingConfig {
+
+    @Bean
+    public ReadYourWritesGuard readYourWritesGuard(RoutingDataSourceProperties properties) {
+        return new ReadYourWritesGuard(properties.getReadYourWritesWindow(), properties.getMaxTrackedClients());
+    }
+
+    /**
+     * Builds the router itself rather than taking it as a bean: a {@code DataSource} bean created while the
+     * primary one is still being resolved trips Boot's data source initializer into a circular reference.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(RoutingDataSourceProperties properties, ReadYourWritesGuard guard) {
+        List<DataSource> replicas = properties.getReplicas().stream()
+                .map(DataSourceEndpoint::build)
+                .collect(Collectors.toList());
+
+        ReadWriteRoutingDataSource router = new ReadWriteRoutingDataSource(properties.getPrimary().build(), replicas, guard);
+        router.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(router);
+    }
+
+    /**
+     * The router behind {@link #dataSource}, registered so its pools are closed on shutdown, after the
+     * entity manager factory (see {@link #entityManagerFactoryDependsOnRouter}).
+     */
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(DataSource dataSource) throws SQLException {
+        return dataSource.unwrap(ReadWriteRoutingDataSource.class);
+    }
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor entityManagerFactoryDependsOnRouter() {
+        return new EntityManagerFactoryDependsOnPostProcessor("routingDataSource");
+    }
+
+    @Bean
+    public FilterRegistrationBean<ClientIdentityFilter> clientIdentityFilter(ReadYourWritesGuard guard) {
+        FilterRegistrationBean<ClientIdentityFilter> registration = new FilterRegistrationBean<>(new ClientIdentityFilter(guard));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
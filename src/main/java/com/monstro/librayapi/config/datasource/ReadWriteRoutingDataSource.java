@@ -0,0 +1,70 @@
+package com.monstro.librayapi.config.datasource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to one of the replicas (round robin) and everything else to the primary.
+ *
+ * The routing key is read when the physical connection is fetched, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction manager marks the
+ * transaction read-only only after it has asked for a connection.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica-";
+
+    private final List<DataSource> targets = new ArrayList<>();
+    private final int replicaCount;
+    private final ReadYourWritesGuard guard;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, ReadYourWritesGuard guard) {
+        this.replicaCount = replicas.size();
+        this.guard = guard;
+
+        Map<Object, Object> lookup = new HashMap<>();
+        lookup.put(PRIMARY, primary);
+        targets.add(primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            lookup.put(REPLICA + i, replicas.get(i));
+            targets.add(replicas.get(i));
+        }
+        setTargetDataSources(lookup);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (replicaCount > 0 && !guard.mustReadFromPrimary()) {
+                return REPLICA + Math.floorMod(nextReplica.getAndIncrement(), replicaCount);
+            }
+            return PRIMARY;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            guard.recordWrite();
+        }
+        return PRIMARY;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        for (DataSource target : targets) {
+            if (target instanceof Closeable) {
+                ((Closeable) target).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.monstro.librayapi.config.datasource;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which clients wrote recently so their reads go to the primary until the replicas had time to catch up.
+ * The client of the current thread is set per request by {@link ClientIdentityFilter}.
+ */
+public class ReadYourWritesGuard {
+
+    private final ThreadLocal<String> currentClient = new ThreadLocal<>();
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final long windowNanos;
+    private final int maxTrackedClients;
+
+    public ReadYourWritesGuard(Duration window, int maxTrackedClients) {
+        this.windowNanos = window.toNanos();
+        this.maxTrackedClients = maxTrackedClients;
+    }
+
+    public void setCurrentClient(String client) {
+        currentClient.set(client);
+    }
+
+    public void clearCurrentClient() {
+        currentClient.remove();
+    }
+
+    /**
+     * The client of the current thread, for work handed to another thread to set there.
+     */
+    public String getCurrentClient() {
+        return currentClient.get();
+    }
+
+    public void recordWrite() {
+        String client = currentClient.get();
+        if (client == null) {
+            return;
+        }
+        if (lastWrites.size() >= maxTrackedClients) {
+            evictExpired();
+        }
+        lastWrites.put(client, System.nanoTime());
+    }
+
+    public boolean mustReadFromPrimary() {
+        String client = currentClient.get();
+        if (client == null) {
+            return false;
+        }
+        Long lastWrite = lastWrites.get(client);
+        if (lastWrite == null) {
+            return false;
+        }
+        if (System.nanoTime() - lastWrite < windowNanos) {
+            return true;
+        }
+        lastWrites.remove(client, lastWrite);
+        return false;
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        Iterator<Long> writes = lastWrites.values().iterator();
+        while (writes.hasNext()) {
+            if (now - writes.next() >= windowNanos) {
+                writes.remove();
+            }
+        }
+        // still full of recent writers: forget an arbitrary one rather than grow without bound
+        Iterator<String> clients = lastWrites.keySet().iterator();
+        while (lastWrites.size() >= maxTrackedClients && clients.hasNext()) {
+            clients.next();
+            clients.remove();
+        }
+    }
+}
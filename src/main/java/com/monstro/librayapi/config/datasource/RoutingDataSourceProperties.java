@@ -0,0 +1,26 @@
+package com.monstro.librayapi.config.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("library.datasource.routing")
+public class RoutingDataSourceProperties {
+
+    private boolean enabled;
+
+    private DataSourceEndpoint primary = new DataSourceEndpoint();
+
+    private List<DataSourceEndpoint> replicas = new ArrayList<>();
+
+    /**
+     * How long a client keeps reading from the primary after its own write; should cover the replication lag.
+     */
+    private Duration readYourWritesWindow = Duration.ofSeconds(5);
+
+    private int maxTrackedClients = 10_000;
+}
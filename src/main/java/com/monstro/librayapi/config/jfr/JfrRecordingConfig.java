@@ -0,0 +1,51 @@
+package com.monstro.librayapi.config.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * {@code jfr} profile: a continuous Flight Recorder recording named {@value #RECORDING_NAME}, with the JDK's
+ * {@code default} settings (made for production use) plus {@link RequestPhaseEvent}s above
+ * {@code library.jfr.phase-threshold}. Only the last {@code library.jfr.max-age} / {@code library.jfr.max-size}
+ * are kept. Dump it when needed with {@code jcmd <pid> JFR.dump name=library-api filename=spike.jfr}; it is also
+ * written to {@code library.jfr.destination} when the JVM exits.
+ */
+@org.springframework.context.annotation.Configuration
+@Profile("jfr")
+public class JfrRecordingConfig {
+
+    public static final String RECORDING_NAME = "library-api";
+
+    private static final Logger log = LoggerFactory.getLogger(JfrRecordingConfig.class);
+
+    @Bean(destroyMethod = "stop")
+    public Recording libraryApiRecording(@Value("${library.jfr.max-age:6h}") Duration maxAge,
+                                         @Value("${library.jfr.max-size:250MB}") DataSize maxSize,
+                                         @Value("${library.jfr.phase-threshold:1ms}") Duration phaseThreshold,
+                                         @Value("${library.jfr.destination:library-api.jfr}") String destination)
+            throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+        recording.setDumpOnExit(true);
+        recording.setDestination(Paths.get(destination));
+        recording.enable(RequestPhaseEvent.class).withThreshold(phaseThreshold);
+        recording.start();
+
+        log.info("Flight recording '{}' started, keeping {} / {}", RECORDING_NAME, maxAge, maxSize);
+        return recording;
+    }
+}
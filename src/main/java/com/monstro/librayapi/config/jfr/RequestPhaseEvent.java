@@ -0,0 +1,118 @@
+package com.monstro.librayapi.config.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.springframework.data.domain.Page;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Flight Recorder event for one phase of a request: mapping, a repository call, the ISBN check or writing the
+ * response. Usage is {@code RequestPhaseEvent event = RequestPhaseEvent.begin(REPOSITORY); ...; event.end(rows);}.
+ *
+ * While no recording has the event enabled, {@code begin} and {@code end} only check a flag. The endpoint is taken
+ * from the current request, so services can record phases without knowing which endpoint called them.
+ */
+@Name("com.monstro.librayapi.RequestPhase")
+@Label("Request Phase")
+@Category({"Library API", "Request"})
+@Description("Time spent in one phase of a request")
+@StackTrace(false)
+public class RequestPhaseEvent extends Event {
+
+    public static final String MAPPING = "mapping";
+    public static final String REPOSITORY = "repository";
+    public static final String EXISTS_BY_ISBN = "existsByIsbn";
+    public static final String SERIALIZATION = "serialization";
+
+    @Label("Endpoint")
+    private String endpoint;
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Rows")
+    private int rows;
+
+    public static RequestPhaseEvent begin(String phase) {
+        RequestPhaseEvent event = new RequestPhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase;
+            event.endpoint = currentEndpoint();
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * For phases that run off the request thread, such as writes to a server-sent-event stream, where there is no
+     * current request to take the endpoint from.
+     */
+    public static RequestPhaseEvent begin(String phase, String endpoint) {
+        RequestPhaseEvent event = new RequestPhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase;
+            event.endpoint = endpoint;
+            event.begin();
+        }
+        return event;
+    }
+
+    public void end(int rows) {
+        if (isEnabled()) {
+            end();
+            if (shouldCommit()) {
+                this.rows = rows;
+                commit();
+            }
+        }
+    }
+
+    public void end(Object result) {
+        if (isEnabled()) {
+            end(rows(result));
+        }
+    }
+
+    /**
+     * Rows in a repository or service result: the elements of a collection or page, 0 or 1 for anything else.
+     */
+    public static int rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Page) {
+            return ((Page<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Boolean) {
+            return (Boolean) result ? 1 : 0;
+        }
+        return 1;
+    }
+
+    private static String currentEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+    }
+}
@@ -0,0 +1,33 @@
+package com.monstro.librayapi.config.shard;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The shard the current thread talks to. Unset means shard 0, which also holds anything that is not sharded.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : 0;
+    }
+
+    public static <T> T callOn(int shard, Callable<T> action) throws Exception {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return action.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
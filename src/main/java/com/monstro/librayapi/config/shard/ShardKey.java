@@ -0,0 +1,23 @@
+package com.monstro.librayapi.config.shard;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the repository method argument that decides the shard: an ISBN, a book or loan id, or an entity.
+ * Methods without one are sent to every shard and their results merged. A numeric ISBN-13 key has to be marked
+ * {@link Kind#ISBN_KEY}, otherwise numbers are taken for ids.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+
+    Kind value() default Kind.AUTO;
+
+    enum Kind {
+        AUTO,
+        ISBN_KEY
+    }
+}
@@ -0,0 +1,70 @@
+package com.monstro.librayapi.config.shard;
+
+import com.monstro.librayapi.util.Isbn;
+
+/**
+ * Where rows live. Books are placed by a hash of the ISBN-13 key (see {@link Isbn}), so every written form of
+ * the same ISBN lands on the same shard; values that are not valid ISBNs fall back to a hash of the text. Every
+ * shard hands out ids from its own range of {@link #ID_STRIDE} so an id alone is enough to find the shard again.
+ */
+public class ShardLayout {
+
+    public static final long ID_STRIDE = 100_000_000L;
+
+    private final int shardCount;
+
+    public ShardLayout(int shardCount) {
+        if (shardCount < 1 || shardCount * ID_STRIDE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("shard count must be between 1 and " + Integer.MAX_VALUE / ID_STRIDE);
+        }
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardForIsbn(String isbn) {
+        if (isbn == null) {
+            return 0;
+        }
+        long isbnKey = Isbn.toIsbn13(isbn);
+        if (isbnKey != Isbn.INVALID) {
+            return shardForIsbnKey(isbnKey);
+        }
+        int hash = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            hash = 31 * hash + Character.toUpperCase(c);
+        }
+        return Math.floorMod(mix(hash), shardCount);
+    }
+
+    public int shardForIsbnKey(long isbnKey) {
+        return Math.floorMod(mix(Long.hashCode(isbnKey)), shardCount);
+    }
+
+    public int shardForId(long id) {
+        int shard = (int) ((id - 1) / ID_STRIDE);
+        if (id < 1 || shard >= shardCount) {
+            throw new IllegalArgumentException("id " + id + " does not belong to any shard");
+        }
+        return shard;
+    }
+
+    public long firstId(int shard) {
+        return shard * ID_STRIDE + 1;
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,62 @@
+package com.monstro.librayapi.config.shard;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Migrates every shard with Flyway, moves each shard's identity columns into its own id range and gathers the
+ * authors on the first shard.
+ */
+class ShardSchemaInitializer {
+
+    private static final String[] TABLES = {"book", "loan"};
+
+    private final String migrations;
+    private final ShardLayout layout;
+
+    ShardSchemaInitializer(String migrations, ShardLayout layout) {
+        this.migrations = migrations;
+        this.layout = layout;
+    }
+
+    void initialize(List<DataSource> shards) {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            DataSource dataSource = shards.get(shard);
+            Flyway.configure()
+                    .dataSource(dataSource)
+                    .locations(migrations)
+                    .load()
+                    .migrate();
+
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            long firstId = layout.firstId(shard);
+            for (String table : TABLES) {
+                Long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from " + table, Long.class);
+                if (maxId < firstId) {
+                    jdbcTemplate.execute("alter table " + table + " alter column id restart with " + firstId);
+                }
+            }
+        }
+        moveAuthorsToFirstShard(shards);
+    }
+
+    /**
+     * Authors are read and added on the first shard only. The author migration fills each shard's table from that
+     * shard's books, with ids taken from book ids, so the rows can be moved over as they are.
+     */
+    private void moveAuthorsToFirstShard(List<DataSource> shards) {
+        JdbcTemplate first = new JdbcTemplate(shards.get(0));
+        for (int shard = 1; shard < shards.size(); shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shards.get(shard));
+            List<Object[]> authors = jdbcTemplate.query("select id, name from author",
+                    (row, number) -> new Object[]{row.getInt("id"), row.getString("name")});
+            if (!authors.isEmpty()) {
+                first.batchUpdate("merge into author (id, name) key (id) values (?, ?)", authors);
+                jdbcTemplate.update("delete from author");
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.monstro.librayapi.config.shard;
+
+import com.monstro.librayapi.config.datasource.DataSourceEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Hash-sharded book storage, enabled with {@code library.sharding.enabled=true}:
+ *
+ * <pre>
+ * library.sharding.shards[0].url=jdbc:...
+ * library.sharding.shards[1].url=jdbc:...
+ * spring.jpa.hibernate.ddl-auto=validate
+ * spring.jpa.open-in-view=false
+ * </pre>
+ *
+ * Open-in-view has to be off: it keeps one connection for the whole request, which pins every call to one shard.
+ * Not meant to be combined with replica routing.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    @Bean
+    public ShardLayout shardLayout(ShardingProperties properties) {
+        return new ShardLayout(properties.getShards().size());
+    }
+
+    /**
+     * Builds the shard router itself rather than taking it as a bean: a {@code DataSource} bean created while the
+     * primary one is still being resolved trips Boot's data source initializer into a circular reference.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardingProperties properties, ShardLayout layout) {
+        List<DataSource> shards = properties.getShards().stream()
+                .map(DataSourceEndpoint::build)
+                .collect(Collectors.toList());
+
+        new ShardSchemaInitializer(properties.getMigrations(), layout).initialize(shards);
+        ShardRoutingDataSource router = new ShardRoutingDataSource(shards);
+        router.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(router);
+    }
+
+    /**
+     * The router behind {@link #dataSource}, registered so its pools are closed on shutdown, after the
+     * entity manager factory (see {@link #entityManagerFactoryDependsOnRouter}).
+     */
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(DataSource dataSource) throws SQLException {
+        return dataSource.unwrap(ShardRoutingDataSource.class);
+    }
+
+    /**
+     * The shards are migrated one by one when {@link #dataSource} is built; Boot's own migration would only reach
+     * whichever shard the router falls back to.
+     */
+    @Bean
+    public FlywayMigrationStrategy shardsAlreadyMigrated() {
+        return flyway -> { };
+    }
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor entityManagerFactoryDependsOnRouter() {
+        return new EntityManagerFactoryDependsOnPostProcessor("shardRoutingDataSource");
+    }
+
+    @Bean
+    public static ShardingRepositoryPostProcessor shardingRepositoryPostProcessor() {
+        return new ShardingRepositoryPostProcessor();
+    }
+}
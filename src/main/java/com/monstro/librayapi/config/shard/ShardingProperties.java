@@ -0,0 +1,34 @@
+package com.monstro.librayapi.config.shard;
+
+import com.monstro.librayapi.config.datasource.DataSourceEndpoint;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("library.sharding")
+public class ShardingProperties {
+
+    private boolean enabled;
+
+    private List<DataSourceEndpoint> shards = new ArrayList<>();
+
+    /**
+     * Flyway migrations run on every shard.
+     */
+    private String migrations = "classpath:db/migration";
+
+    /**
+     * Threads that run the calls sent to every shard, shared by all requests. A call takes one per shard, so this
+     * many divided by the shard count run at once and the others wait for a thread.
+     */
+    private int scatterThreads = 32;
+
+    /**
+     * Deepest row (page offset plus size) a page read from every shard may reach. Each shard reads all the rows up
+     * to it, so deeper pages are refused with 400.
+     */
+    private int maxScatterRows = 10_000;
+}
@@ -0,0 +1,381 @@
+package com.monstro.librayapi.config.shard;
+
+import com.monstro.librayapi.exception.BusinessException;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.entity.Loan;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Sits in front of a Spring Data repository and decides which shard each call goes to.
+ *
+ * Calls with a {@link ShardKey} argument, an entity argument or an id (findById, deleteById, ...) go to a single
+ * shard; a {@link ShardKey} collection is split into one call per shard. Everything else is sent to all shards in parallel and the results are merged: pages are merged in the
+ * requested sort order, collections are concatenated, counts summed and exists-checks or-ed. Saving a stored book
+ * with an ISBN of another shard is refused (see {@link #CROSS_SHARD_ISBN}), and so is a page beyond the first
+ * {@code library.sharding.max-scatter-rows} rows of a call sent to all shards (see {@link #PAGE_TOO_DEEP}).
+ */
+class ShardingRepositoryInvocationHandler implements InvocationHandler {
+
+    private static final Object PINNED_SHARD = new Object();
+    /**
+     * A stored book stays on the shard of its id. Moving it to the shard of a new ISBN would give it a new id, and
+     * its loans and the clients holding the old one would point at nothing, so such an ISBN change is refused.
+     */
+    static final String CROSS_SHARD_ISBN = "Isbn belongs to another shard";
+    static final String PAGE_TOO_DEEP = "Page is too deep, narrow the search";
+
+    private static final Set<String> ID_METHODS = new HashSet<>(Arrays.asList("findById", "existsById", "deleteById", "getOne"));
+
+    private final Object target;
+    private final ShardLayout layout;
+    private final ExecutorService executor;
+    private final int maxScatterRows;
+    private final Supplier<PlatformTransactionManager> transactionManager;
+
+    ShardingRepositoryInvocationHandler(Object target, ShardLayout layout, ExecutorService executor, int maxScatterRows,
+                                        Supplier<PlatformTransactionManager> transactionManager) {
+        this.target = target;
+        this.layout = layout;
+        this.executor = executor;
+        this.maxScatterRows = maxScatterRows;
+        this.transactionManager = transactionManager;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeTarget(method, args);
+        }
+
+        int keyIndex = shardKeyIndex(method);
+        if (keyIndex >= 0 && args[keyIndex] instanceof Collection) {
+            return perShard(method, args, keyIndex);
+        }
+
+        Integer shard = routedShard(method, args);
+        if (shard == null) {
+            return scatter(method, args);
+        }
+
+        if (method.getName().startsWith("save") && args[0] instanceof Book && layout.shardForIsbn(((Book) args[0]).getIsbn()) != shard) {
+            throw new BusinessException(CROSS_SHARD_ISBN);
+        }
+        return onShard(shard, () -> invokeTarget(method, args));
+    }
+
+    private Integer routedShard(Method method, Object[] args) {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+        int keyIndex = shardKeyIndex(method);
+        if (keyIndex >= 0) {
+            return shardOf(method.getParameters()[keyIndex].getAnnotation(ShardKey.class), args[keyIndex]);
+        }
+        if (args.length == 1 && ID_METHODS.contains(method.getName()) && args[0] instanceof Number) {
+            return shardOf(args[0]);
+        }
+        if (args.length == 1 && (args[0] instanceof Book || args[0] instanceof Loan)) {
+            return shardOf(args[0]);
+        }
+        return null;
+    }
+
+    private static int shardKeyIndex(Method method) {
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof ShardKey) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int shardOf(ShardKey shardKey, Object key) {
+        if (shardKey.value() == ShardKey.Kind.ISBN_KEY && key instanceof Number) {
+            return layout.shardForIsbnKey(((Number) key).longValue());
+        }
+        return shardOf(key);
+    }
+
+    private int shardOf(Object key) {
+        if (key instanceof Book) {
+            Book book = (Book) key;
+            return book.getId() != null ? layout.shardForId(book.getId()) : layout.shardForIsbn(book.getIsbn());
+        }
+        if (key instanceof Loan) {
+            Loan loan = (Loan) key;
+            if (loan.getId() != null) {
+                return layout.shardForId(loan.getId());
+            }
+            return loan.getBook() != null ? shardOf(loan.getBook()) : 0;
+        }
+        if (key instanceof Number) {
+            return layout.shardForId(((Number) key).longValue());
+        }
+        if (key instanceof CharSequence) {
+            return layout.shardForIsbn(key.toString());
+        }
+        throw new IllegalArgumentException("cannot pick a shard for " + key);
+    }
+
+    /**
+     * Runs the call against one shard. The connection of a transaction is fetched on its first statement, so the
+     * first shard used pins the transaction; a call for another shard gets a transaction of its own.
+     */
+    private Object onShard(int shard, Callable<Object> call) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isSynchronizationActive()) {
+            Integer pinned = (Integer) TransactionSynchronizationManager.getResource(PINNED_SHARD);
+            if (pinned == null) {
+                pin(shard);
+            } else if (pinned != shard) {
+                return inNewTransaction(shard, call, TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            }
+        }
+        return ShardContext.callOn(shard, call);
+    }
+
+    private void pin(int shard) {
+        TransactionSynchronizationManager.bindResource(PINNED_SHARD, shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(PINNED_SHARD);
+            }
+        });
+    }
+
+    private Object inNewTransaction(int shard, Callable<Object> call, int propagation) throws Exception {
+        TransactionTemplate template = new TransactionTemplate(transactionManager.get());
+        template.setPropagationBehavior(propagation);
+        try {
+            return ShardContext.callOn(shard, () -> template.execute(status -> {
+                try {
+                    return call.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ShardCallException(e);
+                }
+            }));
+        } catch (ShardCallException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Splits a {@link ShardKey} collection by shard and makes one call per shard, one after the other on the calling
+     * thread, so each call joins the caller's transaction as a single-shard call does. Results are merged like those
+     * of {@link #scatter}.
+     */
+    private Object perShard(Method method, Object[] args, int keyIndex) throws Throwable {
+        ShardKey shardKey = method.getParameters()[keyIndex].getAnnotation(ShardKey.class);
+        Map<Integer, List<Object>> keysByShard = new TreeMap<>();
+        for (Object key : (Collection<?>) args[keyIndex]) {
+            keysByShard.computeIfAbsent(shardOf(shardKey, key), shard -> new ArrayList<>()).add(key);
+        }
+
+        List<Object> results = new ArrayList<>();
+        for (Map.Entry<Integer, List<Object>> keys : keysByShard.entrySet()) {
+            Object[] shardArgs = args.clone();
+            shardArgs[keyIndex] = keys.getValue();
+            results.add(onShard(keys.getKey(), () -> invokeTarget(method, shardArgs)));
+        }
+        return merge(method.getReturnType(), args, null, results);
+    }
+
+    private Object scatter(Method method, Object[] args) throws Throwable {
+        Pageable pageable = argument(args, Pageable.class);
+        Object[] shardArgs = args == null ? null : args.clone();
+        if (pageable != null && pageable.isPaged()) {
+            // every shard may hold the whole requested window, so each one returns everything up to its end
+            long window = pageable.getOffset() + pageable.getPageSize();
+            if (window > maxScatterRows) {
+                throw new BusinessException(PAGE_TOO_DEEP);
+            }
+            shardArgs[Arrays.asList(args).indexOf(pageable)] = PageRequest.of(0, (int) window, pageable.getSort());
+        }
+
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < layout.getShardCount(); i++) {
+            int shard = i;
+            futures.add(executor.submit(() -> inNewTransaction(shard, () -> invokeTarget(method, shardArgs),
+                    TransactionDefinition.PROPAGATION_REQUIRED)));
+        }
+
+        List<Object> results = new ArrayList<>();
+        for (Future<Object> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        return merge(method.getReturnType(), args, pageable, results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object merge(Class<?> type, Object[] args, Pageable pageable, List<Object> results) {
+        if (Page.class.isAssignableFrom(type)) {
+            return mergePages(pageable, results);
+        }
+        if (Optional.class == type) {
+            return results.stream().map(result -> (Optional<Object>) result).filter(Optional::isPresent).findFirst().orElse(Optional.empty());
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return results.stream().anyMatch(Boolean.TRUE::equals);
+        }
+        if (type == long.class || type == Long.class) {
+            return results.stream().mapToLong(result -> ((Number) result).longValue()).sum();
+        }
+        if (type == int.class || type == Integer.class) {
+            return results.stream().mapToInt(result -> ((Number) result).intValue()).sum();
+        }
+        if (type == void.class) {
+            return null;
+        }
+        if (Iterable.class.isAssignableFrom(type)) {
+            List<Object> merged = new ArrayList<>();
+            results.forEach(result -> ((Iterable<Object>) result).forEach(merged::add));
+            Sort sort = argument(args, Sort.class);
+            if (sort != null && sort.isSorted()) {
+                merged.sort(comparatorOf(sort));
+            }
+            return merged;
+        }
+        return results.stream().filter(result -> result != null).findFirst().orElse(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Page<Object> mergePages(Pageable pageable, List<Object> results) {
+        long total = 0;
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, results.size()),
+                Comparator.comparing((Cursor cursor) -> cursor.current(), comparatorOf(pageable == null ? Sort.unsorted() : pageable.getSort()))
+                        .thenComparingInt(cursor -> cursor.shard));
+        for (int shard = 0; shard < results.size(); shard++) {
+            Page<Object> page = (Page<Object>) results.get(shard);
+            total += page.getTotalElements();
+            if (page.hasContent()) {
+                cursors.add(new Cursor(shard, page.getContent()));
+            }
+        }
+
+        long skip = pageable != null && pageable.isPaged() ? pageable.getOffset() : 0;
+        int limit = pageable != null && pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+        List<Object> content = new ArrayList<>(Math.min(limit, 1024));
+        while (!cursors.isEmpty() && content.size() < limit) {
+            Cursor cursor = cursors.poll();
+            if (skip > 0) {
+                skip--;
+            } else {
+                content.add(cursor.current());
+            }
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return pageable == null || pageable.isUnpaged() ? new PageImpl<>(content) : new PageImpl<>(content, pageable, total);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Comparator<Object> comparatorOf(Sort sort) {
+        Comparator<Object> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Object> byProperty = (a, b) -> {
+                Object left = new BeanWrapperImpl(a).getPropertyValue(order.getProperty());
+                Object right = new BeanWrapperImpl(b).getPropertyValue(order.getProperty());
+                if (left == null || right == null) {
+                    return left == right ? 0 : left == null ? -1 : 1;
+                }
+                if (order.isIgnoreCase() && left instanceof String) {
+                    return String.CASE_INSENSITIVE_ORDER.compare((String) left, (String) right);
+                }
+                return ((Comparable) left).compareTo(right);
+            };
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        return comparator;
+    }
+
+    private static <T> T argument(Object[] args, Class<T> type) {
+        if (args == null) {
+            return null;
+        }
+        for (Object arg : args) {
+            if (type.isInstance(arg)) {
+                return type.cast(arg);
+            }
+        }
+        return null;
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static class Cursor {
+        final int shard;
+        final List<Object> rows;
+        int position;
+
+        Cursor(int shard, List<Object> rows) {
+            this.shard = shard;
+            this.rows = rows;
+        }
+
+        Object current() {
+            return rows.get(position);
+        }
+
+        boolean advance() {
+            return ++position < rows.size();
+        }
+    }
+
+    private static class ShardCallException extends RuntimeException {
+        ShardCallException(Exception cause) {
+            super(cause);
+        }
+    }
+}
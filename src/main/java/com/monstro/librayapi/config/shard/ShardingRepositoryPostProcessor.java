@@ -0,0 +1,68 @@
+package com.monstro.librayapi.config.shard;
+
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Puts the sharding layer in front of {@link BookRepository} and {@link LoanRepository}, so the services keep
+ * talking to the plain repository interfaces.
+ */
+public class ShardingRepositoryPostProcessor implements BeanPostProcessor, BeanFactoryAware, DisposableBean {
+
+    private BeanFactory beanFactory;
+    private ExecutorService executor;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof BookRepository) && !(bean instanceof LoanRepository)) {
+            return bean;
+        }
+        ShardLayout layout = beanFactory.getBean(ShardLayout.class);
+        ShardingProperties properties = beanFactory.getBean(ShardingProperties.class);
+        Class<?>[] repositoryInterfaces = Arrays.stream(ClassUtils.getAllInterfaces(bean))
+                .filter(Repository.class::isAssignableFrom)
+                .toArray(Class<?>[]::new);
+
+        return Proxy.newProxyInstance(bean.getClass().getClassLoader(), repositoryInterfaces,
+                new ShardingRepositoryInvocationHandler(bean, layout, executor(properties), properties.getMaxScatterRows(),
+                        () -> beanFactory.getBean(PlatformTransactionManager.class)));
+    }
+
+    private synchronized ExecutorService executor(ShardingProperties properties) {
+        if (executor == null) {
+            AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(properties.getScatterThreads(), task -> {
+                Thread thread = new Thread(task, "shard-scatter-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
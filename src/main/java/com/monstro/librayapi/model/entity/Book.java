@@ -1,5 +1,6 @@
 package com.monstro.librayapi.model.entity;
 
+import com.monstro.librayapi.util.Isbn;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -23,9 +24,47 @@ public class Book {
     @Column
     private String title;
 
-    @Column
+    /**
+     * The author's name. Not stored with the book: the service turns it into {@link #authorId} through the
+     * {@code AuthorDictionary} on writes and back on reads.
+     */
+    @Transient
     private String author;
 
+    /**
+     * The id of the book's row in the author table.
+     */
+    @Column(name = "author_id")
+    private Integer authorId;
+
     @Column
     private String isbn;
+
+    /**
+     * The ISBN as an ISBN-13 number, the same for every written form of it; null when {@link #isbn} is not a
+     * valid ISBN.
+     */
+    @Column(name = "isbn_key")
+    private Long isbnKey;
+
+    /**
+     * {@code lower(title)}, computed by the database and indexed; only meant for queries.
+     */
+    @Column(name = "title_lower", insertable = false, updatable = false)
+    private String titleLower;
+
+    /**
+     * Incremented by every update: an update made from an older copy of the book is refused, and in-memory views
+     * skip the {@code BookChangedEvent}s older than the one they applied.
+     */
+    @Version
+    @Column
+    private long version;
+
+    @PrePersist
+    @PreUpdate
+    void computeIsbnKey() {
+        long key = Isbn.toIsbn13(isbn);
+        isbnKey = key == Isbn.INVALID ? null : key;
+    }
 }
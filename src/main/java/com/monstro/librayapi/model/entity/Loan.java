@@ -5,17 +5,32 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import javax.persistence.*;
 import java.time.LocalDate;
 
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
+@Entity
+@Table
 public class Loan {
 
+    @Id
+    @Column
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private  Long id;
+
+    @Column
     private  String customer;
+
+    @ManyToOne
+    @JoinColumn(name = "book_id")
     private Book book;
+
+    @Column
     private LocalDate loanData;
+
+    @Column
     private Boolean returned;
 }
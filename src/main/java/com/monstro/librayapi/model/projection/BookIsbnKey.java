@@ -0,0 +1,11 @@
+package com.monstro.librayapi.model.projection;
+
+/**
+ * Only the columns needed to build the in-memory ISBN index.
+ */
+public interface BookIsbnKey {
+
+    Long getId();
+
+    Long getIsbnKey();
+}
@@ -0,0 +1,32 @@
+package com.monstro.librayapi.model.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * The columns a book is shown with, selected straight from the query so no entity is loaded into the
+ * persistence context. Queries select the author id; the service adds the name from the {@code AuthorDictionary},
+ * the same String for every book of the author.
+ */
+@Value
+@AllArgsConstructor
+public class BookSummary {
+
+    private Long id;
+
+    private String title;
+
+    private Integer authorId;
+
+    private String author;
+
+    private String isbn;
+
+    public BookSummary(Long id, String title, Integer authorId, String isbn) {
+        this(id, title, authorId, null, isbn);
+    }
+
+    public BookSummary withAuthor(String author) {
+        return new BookSummary(id, title, authorId, author, isbn);
+    }
+}
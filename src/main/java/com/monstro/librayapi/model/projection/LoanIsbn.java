@@ -0,0 +1,13 @@
+package com.monstro.librayapi.model.projection;
+
+/**
+ * A loan with the ISBN of its book, used to turn scanned ISBNs into loans.
+ */
+public interface LoanIsbn extends LoanState {
+
+    Long getBookId();
+
+    String getIsbn();
+
+    Long getIsbnKey();
+}
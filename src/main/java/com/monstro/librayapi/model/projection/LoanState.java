@@ -0,0 +1,15 @@
+package com.monstro.librayapi.model.projection;
+
+/**
+ * Whether a loan is still open, without loading it.
+ */
+public interface LoanState {
+
+    Long getId();
+
+    Boolean getReturned();
+
+    default boolean isOpen() {
+        return !Boolean.TRUE.equals(getReturned());
+    }
+}
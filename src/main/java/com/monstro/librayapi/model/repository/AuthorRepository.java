@@ -0,0 +1,17 @@
+package com.monstro.librayapi.model.repository;
+
+import com.monstro.librayapi.model.entity.Author;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Not sharded: on sharded storage every author row is on the first shard.
+ */
+public interface AuthorRepository extends JpaRepository<Author, Integer> {
+
+    Optional<Author> findFirstByNameOrderByIdAsc(String name);
+
+    List<Author> findTop1000ByIdGreaterThanOrderByIdAsc(Integer id);
+}
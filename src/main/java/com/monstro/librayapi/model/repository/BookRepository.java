@@ -1,12 +1,73 @@
 package com.monstro.librayapi.model.repository;
 
+import com.monstro.librayapi.config.shard.ShardKey;
 import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookIsbnKey;
+import com.monstro.librayapi.model.projection.BookSummary;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-public interface BookRepository extends JpaRepository <Book, Integer> {
-    boolean existsByIsbn(String isbn);
+public interface BookRepository extends JpaRepository <Book, Long>, JpaSpecificationExecutor<Book> {
 
-    Optional<Book> findById(Long id);
+    String SUMMARY_FILTER = " where (:title is null or b.titleLower like :title escape '\\')"
+            + " and (:isbn is null or lower(b.isbn) like :isbn escape '\\')";
+
+    String AUTHOR_FILTER = SUMMARY_FILTER + " and b.authorId in :authorIds";
+
+    boolean existsByIsbn(@ShardKey String isbn);
+
+    Optional<Book> findByIsbn(@ShardKey String isbn);
+
+    Optional<Book> findByIsbnKey(@ShardKey(ShardKey.Kind.ISBN_KEY) Long isbnKey);
+
+    List<Book> findTop1000ByIdGreaterThanOrderByIdAsc(Long id);
+
+    /**
+     * Unlike {@code deleteById}, does not load the book first.
+     */
+    @Modifying
+    @Query("delete from Book b where b.id = :id")
+    int deleteBookById(@ShardKey @Param("id") Long id);
+
+    List<BookIsbnKey> findTop1000ByIsbnKeyNotNullAndIdGreaterThanOrderByIdAsc(Long id);
+
+    @Query("select new com.monstro.librayapi.model.projection.BookSummary(b.id, b.title, b.authorId, b.isbn)"
+            + " from Book b where b.id = :id")
+    @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "MANUAL"))
+    Optional<BookSummary> findSummaryById(@ShardKey @Param("id") Long id);
+
+    @Query("select new com.monstro.librayapi.model.projection.BookSummary(b.id, b.title, b.authorId, b.isbn)"
+            + " from Book b where b.id in :ids order by b.id")
+    @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "MANUAL"))
+    List<BookSummary> findSummariesByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Same matching as {@code BookService.find}: the non-null arguments are lower-cased {@code like} patterns.
+     */
+    @Query(value = "select new com.monstro.librayapi.model.projection.BookSummary(b.id, b.title, b.authorId, b.isbn)"
+            + " from Book b" + SUMMARY_FILTER,
+            countQuery = "select count(b) from Book b" + SUMMARY_FILTER)
+    @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "MANUAL"))
+    Page<BookSummary> findSummaries(@Param("title") String title, @Param("isbn") String isbn, Pageable pageable);
+
+    /**
+     * {@link #findSummaries} restricted to the books of {@code authorIds}, which must not be empty.
+     */
+    @Query(value = "select new com.monstro.librayapi.model.projection.BookSummary(b.id, b.title, b.authorId, b.isbn)"
+            + " from Book b" + AUTHOR_FILTER,
+            countQuery = "select count(b) from Book b" + AUTHOR_FILTER)
+    @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "MANUAL"))
+    Page<BookSummary> findSummariesByAuthorIds(@Param("title") String title, @Param("authorIds") Collection<Integer> authorIds,
+                                               @Param("isbn") String isbn, Pageable pageable);
 }
@@ -0,0 +1,79 @@
+package com.monstro.librayapi.model.repository;
+
+import com.monstro.librayapi.config.shard.ShardKey;
+import com.monstro.librayapi.model.entity.Loan;
+import com.monstro.librayapi.model.projection.LoanIsbn;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public interface LoanRepository extends JpaRepository<Loan, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select l.id as id, l.returned as returned, b.id as bookId, b.isbn as isbn, b.isbnKey as isbnKey"
+            + " from Loan l join l.book b where l.id in :ids")
+    List<LoanIsbn> lockStates(@Param("ids") Collection<Long> ids);
+
+    @Query("select l.id as id, l.returned as returned, b.id as bookId, b.isbn as isbn, b.isbnKey as isbnKey"
+            + " from Loan l join l.book b where b.isbnKey in :isbnKeys")
+    List<LoanIsbn> findByBookIsbnKeys(@Param("isbnKeys") Collection<Long> isbnKeys);
+
+    @Query("select l.id as id, l.returned as returned, b.id as bookId, b.isbn as isbn, b.isbnKey as isbnKey"
+            + " from Loan l join l.book b where b.isbn in :isbns")
+    List<LoanIsbn> findByBookIsbns(@Param("isbns") Collection<String> isbns);
+
+    @Query("select case when count(l) > 0 then true else false end from Loan l"
+            + " where l.book.id = :bookId and (l.returned is null or l.returned = false)")
+    boolean existsOpenLoan(@ShardKey @Param("bookId") Long bookId);
+
+    /**
+     * Ids of the books with an open loan above {@code afterBookId}, lowest first, for loading a page at a time.
+     */
+    @Query("select distinct l.book.id from Loan l where (l.returned is null or l.returned = false)"
+            + " and l.book.id > :afterBookId order by l.book.id")
+    List<Long> findOpenLoanBookIds(@Param("afterBookId") Long afterBookId, Pageable pageable);
+
+    @Modifying
+    @Query("update Loan l set l.returned = true where l.id in :ids and (l.returned is null or l.returned = false)")
+    int markReturned(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("update Loan l set l.loanData = :loanData where l.id in :ids and (l.returned is null or l.returned = false)")
+    int renew(@Param("ids") Collection<Long> ids, @Param("loanData") LocalDate loanData);
+
+    /**
+     * Locks the loans and marks the open ones returned, in one call, so on sharded storage both run in the same
+     * transaction on the loans' shard. No return can slip in between: the states returned are the ones the
+     * update changed.
+     */
+    default List<LoanIsbn> lockAndReturn(@ShardKey Collection<Long> ids) {
+        List<LoanIsbn> states = lockStates(ids);
+        List<Long> open = states.stream().filter(LoanIsbn::isOpen).map(LoanIsbn::getId).collect(Collectors.toList());
+        if (!open.isEmpty() && markReturned(open) != open.size()) {
+            throw new ConcurrencyFailureException("Locked loans changed before they were returned");
+        }
+        return states;
+    }
+
+    /**
+     * Like {@link #lockAndReturn}, renewing the open loans.
+     */
+    default List<LoanIsbn> lockAndRenew(@ShardKey Collection<Long> ids, LocalDate loanData) {
+        List<LoanIsbn> states = lockStates(ids);
+        List<Long> open = states.stream().filter(LoanIsbn::isOpen).map(LoanIsbn::getId).collect(Collectors.toList());
+        if (!open.isEmpty() && renew(open, loanData) != open.size()) {
+            throw new ConcurrencyFailureException("Locked loans changed before they were renewed");
+        }
+        return states;
+    }
+}
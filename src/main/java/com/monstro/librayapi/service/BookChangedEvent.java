@@ -0,0 +1,36 @@
+package com.monstro.librayapi.service;
+
+import com.monstro.librayapi.model.entity.Book;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Published by {@link BookServiceImpl} for every write, so in-memory views of the catalogue can follow it.
+ * Listeners should use {@code @TransactionalEventListener} to only see committed changes.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BookChangedEvent {
+
+    public enum Change { CREATED, UPDATED, DELETED }
+
+    private final Change change;
+
+    private final Long id;
+
+    /**
+     * The book after the change, or the deleted book; null when it was deleted by id.
+     */
+    private final Book book;
+
+    /**
+     * The version of the book after the change; null when it was deleted by id.
+     */
+    private final Long version;
+
+    public BookChangedEvent(Change change, Long id, Book book) {
+        this(change, id, book, book == null ? null : book.getVersion());
+    }
+}
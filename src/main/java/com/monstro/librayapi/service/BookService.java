@@ -1,6 +1,7 @@
 package com.monstro.librayapi.service;
 
 import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -13,9 +14,37 @@ public interface BookService {
 
     void delete(Book book);
 
+    /**
+     * Deletes with a single statement, without loading the book first.
+     *
+     * @return false when there is no book with this id
+     */
+    boolean deleteById(Long id);
+
     Book update(Book book);
 
+    /**
+     * Copies title, author and ISBN of {@code changes} onto the stored book in one transaction: one select and
+     * one update.
+     */
+    Optional<Book> updateById(Long id, Book changes);
+
     Page<Book> find(Book filter, Pageable pageRequest);
 
     Optional<Book>  getByIsbn(String isbn);
+
+    Optional<BookSummary> getSummaryById(Long id);
+
+    /**
+     * Books matching the filter, case-insensitive "contains" on each given field. The author filter is matched
+     * against the author names in memory and queried as a list of author ids. Pages can be sorted by the book's
+     * own columns, not by author, which is stored apart.
+     */
+    Page<BookSummary> findSummaries(Book filter, Pageable pageRequest);
+
+    /**
+     * Like {@link #findSummaries}, without the books that are out on loan. Matching and availability are answered
+     * in memory, so only the page's rows are read; pages are in id order.
+     */
+    Page<BookSummary> findAvailableSummaries(Book filter, Pageable pageRequest);
 }
@@ -1,70 +1,372 @@
 package com.monstro.librayapi.service;
 
+import com.monstro.librayapi.config.jfr.RequestPhaseEvent;
 import com.monstro.librayapi.exception.BusinessException;
 import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
 import com.monstro.librayapi.model.repository.BookRepository;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import com.monstro.librayapi.service.cache.BookReadCache;
+import com.monstro.librayapi.service.projection.AuthorDictionary;
+import com.monstro.librayapi.service.projection.BookCatalogProjection;
+import com.monstro.librayapi.service.projection.IsbnIndex;
+import com.monstro.librayapi.service.projection.LoanedBooks;
+import com.monstro.librayapi.util.Isbn;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 public class BookServiceImpl implements BookService {
 
+    /**
+     * Order of summary pages that ask for none: stable across pages, and walks the primary key so a page stops
+     * reading once it is full.
+     */
+    private static final Sort DEFAULT_SORT = Sort.by("id");
+
+    /**
+     * Most author ids an {@code author} filter is sent to the database as, in one {@code in} list. The author rows of
+     * sharded storage live on the first shard only, so the filter cannot be a subquery on {@code author}.
+     */
+    public static final int MAX_AUTHOR_IDS = 500;
+
     private BookRepository repository;
+    private ApplicationEventPublisher eventPublisher;
+    private IsbnIndex isbnIndex;
+    private BookReadCache readCache;
+    private BookCatalogProjection catalogProjection;
+    private LoanedBooks loanedBooks;
+    private AuthorDictionary authors;
 
-    public BookServiceImpl(BookRepository repository) {
+    public BookServiceImpl(BookRepository repository, ApplicationEventPublisher eventPublisher, IsbnIndex isbnIndex,
+                           BookReadCache readCache, BookCatalogProjection catalogProjection, LoanedBooks loanedBooks,
+                           AuthorDictionary authors) {
         this.repository = repository;
+        this.eventPublisher = eventPublisher;
+        this.isbnIndex = isbnIndex;
+        this.readCache = readCache;
+        this.catalogProjection = catalogProjection;
+        this.loanedBooks = loanedBooks;
+        this.authors = authors;
     }
 
     @Override
+    @Transactional
     public Book save(Book book) {
-        if(repository.existsByIsbn(book.getIsbn())){
+        long isbnKey = Isbn.toIsbn13(book.getIsbn());
+        boolean registered;
+        if(isbnKey == Isbn.INVALID){
+            RequestPhaseEvent existsEvent = RequestPhaseEvent.begin(RequestPhaseEvent.EXISTS_BY_ISBN);
+            registered = repository.existsByIsbn(book.getIsbn());
+            existsEvent.end(registered);
+        } else {
+            registered = isbnIndex.idOf(isbnKey) != IsbnIndex.NOT_FOUND;
+        }
+        if(registered){
             throw new BusinessException("Isbn already register");
         }
-        return repository.save(book);
+        book.setIsbnKey(isbnKey == Isbn.INVALID ? null : isbnKey);
+        book.setAuthorId(authors.idOf(book.getAuthor()));
+
+        Book saved;
+        try {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            saved = repository.save(book);
+            event.end(1);
+        } catch (DataIntegrityViolationException e) {
+            // registered through another instance, so not in our index yet
+            throw new BusinessException("Isbn already register");
+        }
+        saved.setAuthor(book.getAuthor());
+        eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Change.CREATED, saved.getId(), saved));
+        return saved;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Optional<Book> getById(Long id) {
-        return repository.findById(Math.toIntExact(id));
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+        Optional<Book> book = repository.findById(id);
+        event.end(book);
+        return book.map(this::withAuthorName);
     }
 
     @Override
+    @Transactional
     public void delete(Book book) {
         if(book == null || book.getId() == null){
             throw new IllegalArgumentException("book id cant be null");
         }
 
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
         this.repository.delete(book);
+        event.end(1);
+        eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Change.DELETED, book.getId(), book));
+    }
+
+    @Override
+    @Transactional
+    public boolean deleteById(Long id) {
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+        int deleted = repository.deleteBookById(id);
+        event.end(deleted);
+        if(deleted == 0){
+            return false;
+        }
+        eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Change.DELETED, id, null));
+        return true;
     }
 
     @Override
+    @Transactional
     public Book update(Book book) {
         if(book == null || book.getId() == null){
             throw new IllegalArgumentException("book id cant be null");
         }
+        assignIsbnKey(book);
+        book.setAuthorId(authors.idOf(book.getAuthor()));
+
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+        // flushed, so the event carries the version of this update
+        Book updated = this.repository.saveAndFlush(book);
+        event.end(1);
+        updated.setAuthor(book.getAuthor());
+        eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Change.UPDATED, book.getId(), updated));
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Book> updateById(Long id, Book changes) {
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+        Optional<Book> found = repository.findById(id);
+        event.end(found);
 
-        return  this.repository.save(book);
+        found.ifPresent(book -> {
+            book.setTitle(changes.getTitle());
+            book.setAuthor(changes.getAuthor());
+            book.setAuthorId(authors.idOf(changes.getAuthor()));
+            book.setIsbn(changes.getIsbn());
+            assignIsbnKey(book);
+            // through the repository, so sharded storage can refuse an isbn of another shard; still no merge
+            // statement, the book is managed. Flushed, so the event carries the version of this update
+            repository.saveAndFlush(book);
+            eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Change.UPDATED, id, book));
+        });
+        return found;
+    }
+
+    private void assignIsbnKey(Book book) {
+        long isbnKey = Isbn.toIsbn13(book.getIsbn());
+        if(isbnKey != Isbn.INVALID){
+            long owner = isbnIndex.idOf(isbnKey);
+            if(owner != IsbnIndex.NOT_FOUND && owner != book.getId()){
+                throw new BusinessException("Isbn already register");
+            }
+        }
+        book.setIsbnKey(isbnKey == Isbn.INVALID ? null : isbnKey);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<Book> find(Book filter, Pageable pageRequest) {
-        Example<Book> exmple = Example.of(filter, ExampleMatcher
-                .matching()
-                .withIgnoreCase()
-                .withIgnoreNullValues()
-                .withStringMatcher(
-                ExampleMatcher.StringMatcher.CONTAINING));
+        List<Integer> authorIds = authorIdsContaining(filter.getAuthor());
+        if(authorIds != null && authorIds.isEmpty()){
+            return new PageImpl<>(Collections.emptyList(), pageRequest, 0);
+        }
+
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+        Page<Book> page = repository.findAll(matching(filter, authorIds), pageRequest);
+        event.end(page);
+        return page.map(this::withAuthorName);
+    }
+
+    /**
+     * Ids of the authors an {@code author} filter matches, null without one.
+     *
+     * @throws BusinessException when it matches more than {@value #MAX_AUTHOR_IDS} authors
+     */
+    private List<Integer> authorIdsContaining(String author) {
+        if(author == null){
+            return null;
+        }
+        List<Integer> authorIds = authors.idsContaining(author);
+        if(authorIds.size() > MAX_AUTHOR_IDS){
+            throw new BusinessException("Author filter matches more than " + MAX_AUTHOR_IDS + " authors");
+        }
+        return authorIds;
+    }
 
-        return  repository.findAll(exmple, pageRequest);
+    /**
+     * Case-insensitive "contains" on title and isbn, and one of {@code authorIds} unless null.
+     */
+    private static Specification<Book> matching(Book filter, List<Integer> authorIds) {
+        String title = containing(filter.getTitle());
+        String isbn = containing(filter.getIsbn());
+        return (root, query, builder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if(title != null){
+                predicates.add(builder.like(builder.lower(root.get("title")), title, '\\'));
+            }
+            if(isbn != null){
+                predicates.add(builder.like(builder.lower(root.get("isbn")), isbn, '\\'));
+            }
+            if(authorIds != null){
+                predicates.add(root.get("authorId").in(authorIds));
+            }
+            return builder.and(predicates.toArray(new Predicate[0]));
+        };
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Optional<Book> getByIsbn(String isbn) {
-        return null;
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+        Optional<Book> book = findByIsbn(isbn);
+        event.end(book);
+        return book.map(this::withAuthorName);
+    }
+
+    private Optional<Book> findByIsbn(String isbn) {
+        long isbnKey = Isbn.toIsbn13(isbn);
+        if(isbnKey == Isbn.INVALID){
+            return repository.findByIsbn(isbn);
+        }
+        long id = isbnIndex.idOf(isbnKey);
+        if(id != IsbnIndex.NOT_FOUND){
+            Optional<Book> book = repository.findById(id);
+            if(book.isPresent()){
+                return book;
+            }
+        }
+        return repository.findByIsbnKey(isbnKey);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<BookSummary> getSummaryById(Long id) {
+        return readCache.summary(id, () -> {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            Optional<BookSummary> summary = repository.findSummaryById(id);
+            event.end(summary);
+            return summary.map(this::withAuthorName);
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<BookSummary> findSummaries(Book filter, Pageable pageRequest) {
+        if (pageRequest.getSort().isUnsorted()) {
+            pageRequest = PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize(), DEFAULT_SORT);
+        }
+        if (pageRequest.getSort().getOrderFor("author") != null) {
+            pageRequest = PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize(),
+                    byAuthorId(pageRequest.getSort()));
+        }
+        String title = containing(filter.getTitle());
+        String isbn = containing(filter.getIsbn());
+        Pageable sortedRequest = pageRequest;
+        return readCache.page(Arrays.asList(title, filter.getAuthor(), isbn, sortedRequest), () -> {
+            List<Integer> authorIds = authorIdsContaining(filter.getAuthor());
+            if (authorIds != null && authorIds.isEmpty()) {
+                return new PageImpl<>(Collections.emptyList(), sortedRequest, 0);
+            }
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            Page<BookSummary> page = authorIds == null
+                    ? repository.findSummaries(title, isbn, sortedRequest)
+                    : repository.findSummariesByAuthorIds(title, authorIds, isbn, sortedRequest);
+            event.end(page);
+            return page.map(this::withAuthorName);
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<BookSummary> findAvailableSummaries(Book filter, Pageable pageRequest) {
+        if (pageRequest.getSort().isSorted() && !pageRequest.getSort().equals(DEFAULT_SORT)) {
+            throw new BusinessException("Available books are listed by id only");
+        }
+        RoaringBitmap available = catalogProjection.matchingIds(filter);
+        // as fresh as this instance's loaned books: a loan made or returned through another instance shows here
+        // only after a restart, so the listing can be off for those books; a checkout still asks the database
+        loanedBooks.removeLoaned(available);
+        long total = available.getLongCardinality();
+        if (pageRequest.isUnpaged()) {
+            pageRequest = PageRequest.of(0, Math.max(1, Math.toIntExact(total)), DEFAULT_SORT);
+        }
+        if (pageRequest.getOffset() >= total) {
+            return new PageImpl<>(Collections.emptyList(), pageRequest, total);
+        }
+
+        List<Long> pageIds = new ArrayList<>(pageRequest.getPageSize());
+        PeekableIntIterator iterator = available.getIntIterator();
+        iterator.advanceIfNeeded(available.select(Math.toIntExact(pageRequest.getOffset())));
+        while (iterator.hasNext() && pageIds.size() < pageRequest.getPageSize()) {
+            pageIds.add((long) iterator.next());
+        }
+
+        RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+        List<BookSummary> rows = repository.findSummariesByIds(pageIds).stream()
+                .map(this::withAuthorName)
+                .collect(Collectors.toList());
+        event.end(rows.size());
+        // sharded storage concatenates the rows of each shard
+        rows.sort(Comparator.comparing(BookSummary::getId));
+        return new PageImpl<>(rows, pageRequest, total);
+    }
+
+    /**
+     * {@code sort} with the author order on the author id index instead: books no longer hold the name, and on sharded
+     * storage the author rows are on the first shard only, so the name cannot be joined. Books of an author stay
+     * together, but authors come in the order they were added, not by name. Ties are broken by id so pages are stable.
+     */
+    private static Sort byAuthorId(Sort sort) {
+        List<Sort.Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            orders.add(order.getProperty().equals("author") ? new Sort.Order(order.getDirection(), "authorId") : order);
+        }
+        if (sort.getOrderFor("id") == null) {
+            orders.add(Sort.Order.asc("id"));
+        }
+        return Sort.by(orders);
+    }
+
+    private Book withAuthorName(Book book) {
+        book.setAuthor(authors.nameOf(book.getAuthorId()));
+        return book;
+    }
+
+    private BookSummary withAuthorName(BookSummary summary) {
+        return summary.withAuthor(authors.nameOf(summary.getAuthorId()));
+    }
+
+    private static String containing(String value) {
+        if(value == null){
+            return null;
+        }
+        String escaped = value.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
     }
 }
@@ -0,0 +1,6 @@
+package com.monstro.librayapi.service;
+
+public enum LoanBatchAction {
+    RETURN,
+    RENEW
+}
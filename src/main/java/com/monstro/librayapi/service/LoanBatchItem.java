@@ -0,0 +1,25 @@
+package com.monstro.librayapi.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What a batch did with one loan id or ISBN from the request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchItem {
+
+    public enum Outcome { RETURNED, RENEWED, ALREADY_RETURNED, NOT_FOUND, DUPLICATE }
+
+    /**
+     * The loan id or ISBN as it was sent.
+     */
+    private String reference;
+
+    private Long loanId;
+
+    private Outcome outcome;
+}
@@ -0,0 +1,28 @@
+package com.monstro.librayapi.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Published by {@link LoanServiceImpl} when books are lent or given back, so their availability can be pushed to
+ * clients. Listeners should use {@code @TransactionalEventListener} to only see committed changes.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class LoanChangedEvent {
+
+    public enum Change { CREATED, RETURNED }
+
+    private final Change change;
+
+    private final List<Long> bookIds;
+
+    /**
+     * The ISBNs of the books whose loans changed, as stored on the books.
+     */
+    private final List<String> isbns;
+}
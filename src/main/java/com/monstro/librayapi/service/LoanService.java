@@ -2,6 +2,10 @@ package com.monstro.librayapi.service;
 
 import com.monstro.librayapi.model.entity.Loan;
 
+import java.util.List;
+
 public interface LoanService  {
     Loan save(Loan loan);
+
+    List<LoanBatchItem> applyBatch(LoanBatchAction action, List<Long> loanIds, List<String> isbns);
 }
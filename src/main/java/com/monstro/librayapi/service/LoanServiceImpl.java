@@ -0,0 +1,211 @@
+package com.monstro.librayapi.service;
+
+import com.monstro.librayapi.config.jfr.RequestPhaseEvent;
+import com.monstro.librayapi.exception.BusinessException;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.entity.Loan;
+import com.monstro.librayapi.model.projection.LoanIsbn;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import com.monstro.librayapi.service.projection.LoanedBooks;
+import com.monstro.librayapi.util.Isbn;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class LoanServiceImpl implements LoanService {
+
+    public static final int MAX_BATCH_ITEMS = 1000;
+
+    private static final int CHUNK_SIZE = 500;
+
+    private LoanRepository repository;
+    private ApplicationEventPublisher eventPublisher;
+    private LoanedBooks loanedBooks;
+
+    public LoanServiceImpl(LoanRepository repository, ApplicationEventPublisher eventPublisher, LoanedBooks loanedBooks) {
+        this.repository = repository;
+        this.eventPublisher = eventPublisher;
+        this.loanedBooks = loanedBooks;
+    }
+
+    /**
+     * Refuses a book that is already out: known loans are checked in memory, and the database refuses a second
+     * open loan made through another instance. The memory can be stale (a loan returned through another instance),
+     * so a book found there is only refused once the database shows an open loan for it.
+     */
+    @Override
+    public Loan save(Loan loan) {
+        Book book = loan.getBook();
+        if (book == null || book.getId() == null) {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            Loan saved = repository.save(loan);
+            event.end(1);
+            return saved;
+        }
+        // false when the bit was already set: the book is then left marked whatever happens to this loan
+        boolean reserved = loanedBooks.tryCheckout(book.getId());
+        if (!reserved) {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            boolean open = repository.existsOpenLoan(book.getId());
+            event.end(open);
+            if (open) {
+                throw new BusinessException("Book already loaned");
+            }
+        }
+
+        Loan saved;
+        try {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            saved = repository.save(loan);
+            event.end(1);
+        } catch (DataIntegrityViolationException e) {
+            if (reserved) {
+                loanedBooks.release(book.getId());
+            }
+            throw new BusinessException("Book already loaned");
+        } catch (RuntimeException e) {
+            if (reserved) {
+                loanedBooks.release(book.getId());
+            }
+            throw e;
+        }
+        eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.CREATED,
+                Collections.singletonList(book.getId()), Collections.singletonList(book.getIsbn())));
+        return saved;
+    }
+
+    /**
+     * Returns or renews many loans in one transaction; on sharded storage, in one transaction per shard. ISBNs stand
+     * for the open loans of their book. Loans are locked and read {@value #CHUNK_SIZE} at a time, and the open ones
+     * updated while still locked, with one conditional update per chunk and shard. Returned books are announced with one {@link LoanChangedEvent}. Every loan id and ISBN gets an
+     * item, in the order sent; one that refers to a loan already referred to earlier in the batch is a
+     * {@code DUPLICATE}.
+     */
+    @Override
+    @Transactional
+    public List<LoanBatchItem> applyBatch(LoanBatchAction action, List<Long> loanIds, List<String> isbns) {
+        loanIds = loanIds == null ? Collections.emptyList() : loanIds;
+        isbns = isbns == null ? Collections.emptyList() : isbns;
+        if(loanIds.size() + isbns.size() > MAX_BATCH_ITEMS){
+            throw new BusinessException("A batch takes at most " + MAX_BATCH_ITEMS + " loan ids and isbns");
+        }
+
+        // one item per input, in input order; an item without an outcome yet waits for the state of its loan
+        Set<Long> claimed = new LinkedHashSet<>();
+        List<LoanBatchItem> items = new ArrayList<>(loanIds.size() + isbns.size());
+        for (Long loanId : loanIds) {
+            LoanBatchItem.Outcome outcome = loanId == null ? LoanBatchItem.Outcome.NOT_FOUND
+                    : claimed.add(loanId) ? null : LoanBatchItem.Outcome.DUPLICATE;
+            items.add(new LoanBatchItem(String.valueOf(loanId), loanId, outcome));
+        }
+        Map<String, List<LoanIsbn>> loansByIsbn = findLoansByIsbn(isbns);
+        for (String isbn : isbns) {
+            List<LoanIsbn> loans = loansByIsbn.getOrDefault(isbn, Collections.emptyList());
+            Long firstOpen = null;
+            Long firstClaimed = null;
+            for (LoanIsbn loan : loans) {
+                if (loan.isOpen()) {
+                    firstOpen = firstOpen == null ? loan.getId() : firstOpen;
+                    if (claimed.add(loan.getId()) && firstClaimed == null) {
+                        firstClaimed = loan.getId();
+                    }
+                }
+            }
+            if (firstOpen == null) {
+                LoanBatchItem.Outcome outcome = loans.isEmpty() ? LoanBatchItem.Outcome.NOT_FOUND : LoanBatchItem.Outcome.ALREADY_RETURNED;
+                items.add(new LoanBatchItem(isbn, null, outcome));
+            } else if (firstClaimed == null) {
+                items.add(new LoanBatchItem(isbn, firstOpen, LoanBatchItem.Outcome.DUPLICATE));
+            } else {
+                items.add(new LoanBatchItem(isbn, firstClaimed, null));
+            }
+        }
+
+        Map<Long, LoanIsbn> states = new HashMap<>();
+        Set<Long> returnedBookIds = new LinkedHashSet<>();
+        Set<String> returnedIsbns = new LinkedHashSet<>();
+        LocalDate today = LocalDate.now();
+        for (List<Long> chunk : chunks(new ArrayList<>(claimed))) {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            List<LoanIsbn> locked = action == LoanBatchAction.RETURN
+                    ? repository.lockAndReturn(chunk)
+                    : repository.lockAndRenew(chunk, today);
+            event.end(locked);
+            for (LoanIsbn state : locked) {
+                states.put(state.getId(), state);
+                if (state.isOpen()) {
+                    returnedBookIds.add(state.getBookId());
+                    returnedIsbns.add(state.getIsbn());
+                }
+            }
+        }
+
+        if (action == LoanBatchAction.RETURN && !returnedBookIds.isEmpty()) {
+            eventPublisher.publishEvent(new LoanChangedEvent(LoanChangedEvent.Change.RETURNED,
+                    new ArrayList<>(returnedBookIds), new ArrayList<>(returnedIsbns)));
+        }
+
+        LoanBatchItem.Outcome applied = action == LoanBatchAction.RETURN ? LoanBatchItem.Outcome.RETURNED : LoanBatchItem.Outcome.RENEWED;
+        for (LoanBatchItem item : items) {
+            if (item.getOutcome() == null) {
+                LoanIsbn state = states.get(item.getLoanId());
+                item.setOutcome(state == null ? LoanBatchItem.Outcome.NOT_FOUND
+                        : state.isOpen() ? applied : LoanBatchItem.Outcome.ALREADY_RETURNED);
+            }
+        }
+        return items;
+    }
+
+    private Map<String, List<LoanIsbn>> findLoansByIsbn(List<String> isbns) {
+        Map<Long, List<String>> isbnsByKey = new HashMap<>();
+        List<String> freeFormIsbns = new ArrayList<>();
+        for (String isbn : isbns) {
+            long isbnKey = Isbn.toIsbn13(isbn);
+            if (isbnKey == Isbn.INVALID) {
+                freeFormIsbns.add(isbn);
+            } else {
+                isbnsByKey.computeIfAbsent(isbnKey, key -> new ArrayList<>()).add(isbn);
+            }
+        }
+
+        Map<String, List<LoanIsbn>> loansByIsbn = new HashMap<>();
+        for (List<Long> chunk : chunks(new ArrayList<>(isbnsByKey.keySet()))) {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            List<LoanIsbn> loans = repository.findByBookIsbnKeys(chunk);
+            event.end(loans);
+            for (LoanIsbn loan : loans) {
+                for (String isbn : isbnsByKey.get(loan.getIsbnKey())) {
+                    loansByIsbn.computeIfAbsent(isbn, key -> new ArrayList<>()).add(loan);
+                }
+            }
+        }
+        for (List<String> chunk : chunks(freeFormIsbns)) {
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            List<LoanIsbn> loans = repository.findByBookIsbns(chunk);
+            event.end(loans);
+            for (LoanIsbn loan : loans) {
+                loansByIsbn.computeIfAbsent(loan.getIsbn(), key -> new ArrayList<>()).add(loan);
+            }
+        }
+        return loansByIsbn;
+    }
+
+    private static <T> List<List<T>> chunks(List<T> values) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += CHUNK_SIZE) {
+            chunks.add(values.subList(from, Math.min(values.size(), from + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,162 @@
+package com.monstro.librayapi.service.cache;
+
+import com.monstro.librayapi.model.projection.BookSummary;
+import com.monstro.librayapi.service.BookChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Book summaries by id and summary pages by filter and page request, kept in memory for
+ * {@code library.cache.ttl}, at most {@code library.cache.max-entries} of each, least recently read first out.
+ * Off unless {@code library.cache.enabled}.
+ *
+ * A committed book change evicts its id and every page, here and, through the {@link InvalidationBus}, on the other
+ * instances. A value read while an eviction happens is not stored, so a read that raced a change cannot put the old
+ * state back. Publishes {@code library.cache.hits} and {@code .misses}.
+ */
+@Component
+public class BookReadCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LongSupplier nanoClock;
+
+    private final Map<Long, Entry<Optional<BookSummary>>> summaries;
+    private final Map<Object, Entry<Page<BookSummary>>> pages;
+
+    /**
+     * Bumped by every eviction; a load only stores its value when the generation did not move meanwhile.
+     */
+    private long generation;
+    private long hits;
+    private long misses;
+
+    @Autowired
+    public BookReadCache(@Value("${library.cache.enabled:false}") boolean enabled,
+                         @Value("${library.cache.ttl:PT5M}") Duration ttl,
+                         @Value("${library.cache.max-entries:10000}") int maxEntries) {
+        this(enabled, ttl, maxEntries, System::nanoTime);
+    }
+
+    BookReadCache(boolean enabled, Duration ttl, int maxEntries, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.nanoClock = nanoClock;
+        this.summaries = lru();
+        this.pages = lru();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<BookSummary> summary(Long id, Supplier<Optional<BookSummary>> loader) {
+        return read(summaries, id, loader);
+    }
+
+    /**
+     * @param key everything the page depends on, compared with {@code equals}
+     */
+    public Page<BookSummary> page(Object key, Supplier<Page<BookSummary>> loader) {
+        return read(pages, key, loader);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        evict(Collections.singletonList(event.getId()));
+    }
+
+    /**
+     * Forgets the summaries of {@code ids} and every page, since any of them may have listed those books.
+     */
+    public void evict(Collection<Long> ids) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            generation++;
+            for (Long id : ids) {
+                summaries.remove(id);
+            }
+            pages.clear();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private <K, V> V read(Map<K, Entry<V>> entries, K key, Supplier<V> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt - nanoClock.getAsLong() > 0) {
+                hits++;
+                return entry.value;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        V value = loader.get();
+        synchronized (this) {
+            if (loadGeneration == generation) {
+                entries.put(key, new Entry<>(value, nanoClock.getAsLong() + ttlNanos));
+            }
+        }
+        return value;
+    }
+
+    private <K, V> Map<K, V> lru() {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("library.cache.hits", this, BookReadCache::getHits)
+                .description("Book reads answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("library.cache.misses", this, BookReadCache::getMisses)
+                .description("Book reads that went to the database")
+                .register(registry);
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
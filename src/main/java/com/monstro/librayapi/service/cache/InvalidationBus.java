@@ -0,0 +1,252 @@
+package com.monstro.librayapi.service.cache;
+
+import com.monstro.librayapi.service.BookChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells the other instances which books changed, over UDP, so they evict them from their {@link BookReadCache}.
+ *
+ * Changed ids are collected for {@code library.invalidation.flush-interval} and sent together, each id once however
+ * often it changed, at most {@value #MAX_IDS_PER_DATAGRAM} per datagram, to every address of
+ * {@code library.invalidation.peers} ({@code host:port}, a multicast group included). Datagrams are received on
+ * {@code library.invalidation.port}, after joining {@code library.invalidation.group} when set, on
+ * {@code library.invalidation.interface} (a network interface name; the system's choice when empty); a received
+ * batch is one eviction. A lost datagram leaves the books stale until the cache's ttl, which bounds staleness.
+ *
+ * Only created when {@code library.invalidation.port} is set. Publishes {@code library.invalidation.sent} and
+ * {@code .received}, in ids.
+ */
+@Component
+@ConditionalOnProperty("library.invalidation.port")
+public class InvalidationBus implements MeterBinder, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    static final int MAX_IDS_PER_DATAGRAM = 150;
+
+    private static final int MAGIC = 0x4C494231;
+    private static final int HEADER_BYTES = 16;
+
+    private final BookReadCache cache;
+    private final List<InetSocketAddress> peers;
+    private final Duration flushInterval;
+    private final long instanceId = new Random().nextLong();
+
+    private final DatagramSocket socket;
+    private final Thread receiver;
+    private final ThreadPoolTaskScheduler flusher = new ThreadPoolTaskScheduler();
+
+    private final Set<Long> pending = new LinkedHashSet<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    public InvalidationBus(BookReadCache cache,
+                           @Value("${library.invalidation.port}") int port,
+                           @Value("${library.invalidation.bind-address:0.0.0.0}") String bindAddress,
+                           @Value("${library.invalidation.group:}") String group,
+                           @Value("${library.invalidation.interface:}") String networkInterface,
+                           @Value("${library.invalidation.peers:}") String peers,
+                           @Value("${library.invalidation.flush-interval:PT0.005S}") Duration flushInterval) {
+        this.cache = cache;
+        this.peers = parsePeers(peers);
+        this.flushInterval = flushInterval;
+        try {
+            if (group.isEmpty()) {
+                socket = new DatagramSocket(new InetSocketAddress(bindAddress, port));
+            } else {
+                MulticastSocket multicast = new MulticastSocket(port);
+                multicast.joinGroup(new InetSocketAddress(InetAddress.getByName(group), port), networkInterface(networkInterface));
+                socket = multicast;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot listen for invalidations on port " + port, e);
+        }
+
+        flusher.setThreadNamePrefix("invalidation-flush-");
+        flusher.initialize();
+        receiver = new Thread(this::receive, "invalidation-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private static NetworkInterface networkInterface(String name) throws SocketException {
+        if (name.isEmpty()) {
+            return null;
+        }
+        NetworkInterface networkInterface = NetworkInterface.getByName(name);
+        if (networkInterface == null) {
+            throw new SocketException("no network interface named " + name);
+        }
+        return networkInterface;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        broadcast(event.getId());
+    }
+
+    /**
+     * Queues {@code id} for the next datagram to the peers.
+     */
+    public void broadcast(Long id) {
+        synchronized (pending) {
+            pending.add(id);
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::flush, Instant.now().plus(flushInterval));
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<Long> ids;
+        synchronized (pending) {
+            ids = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_DATAGRAM) {
+            byte[] datagram = encode(ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_DATAGRAM)));
+            for (InetSocketAddress peer : peers) {
+                try {
+                    socket.send(new DatagramPacket(datagram, datagram.length, peer));
+                } catch (IOException e) {
+                    log.warn("Could not send invalidations to {}: {}", peer, e.getMessage());
+                }
+            }
+        }
+        sent.addAndGet(ids.size());
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[HEADER_BYTES + MAX_IDS_PER_DATAGRAM * Long.BYTES];
+        while (running) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                List<Long> ids = decode(packet);
+                if (!ids.isEmpty()) {
+                    cache.evict(ids);
+                    received.addAndGet(ids.size());
+                }
+            } catch (SocketException e) {
+                // closed by destroy
+            } catch (IOException e) {
+                log.warn("Ignoring an invalidation datagram: {}", e.getMessage());
+            }
+        }
+    }
+
+    private byte[] encode(List<Long> ids) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + ids.size() * Long.BYTES);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeLong(instanceId);
+            out.writeInt(ids.size());
+            for (Long id : ids) {
+                out.writeLong(id);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The ids of a datagram from another instance; none for our own, which a multicast group loops back.
+     */
+    private List<Long> decode(DatagramPacket packet) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not an invalidation datagram");
+        }
+        if (in.readLong() == instanceId) {
+            return new ArrayList<>();
+        }
+        int count = in.readInt();
+        if (count < 0 || count > MAX_IDS_PER_DATAGRAM) {
+            throw new IOException("bad id count " + count);
+        }
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readLong());
+        }
+        return ids;
+    }
+
+    private static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("library.invalidation.peers takes host:port, not " + peer);
+            }
+            addresses.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("library.invalidation.sent", this, InvalidationBus::getSent)
+                .description("Changed book ids sent to the other instances")
+                .register(registry);
+        FunctionCounter.builder("library.invalidation.received", this, InvalidationBus::getReceived)
+                .description("Changed book ids received from the other instances")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        flusher.shutdown();
+        socket.close();
+    }
+}
@@ -0,0 +1,229 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.entity.Author;
+import com.monstro.librayapi.model.repository.AuthorRepository;
+import com.monstro.librayapi.util.LongLongHashMap;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The author table in memory, id to name and name to id, so books only carry an int author id and every book of an
+ * author shares one name String: in rows, in cached entities and summaries, and in the catalogue projection.
+ *
+ * Loaded at startup ahead of the projections that decode through it, then topped up with the authors added by other
+ * instances every {@code library.authors.refresh-interval}. A name not seen yet is looked up, and created when
+ * missing, in a transaction of its own, so the caller's transaction (and, when sharded, the shard it is pinned to)
+ * is left alone. An id not seen yet is read on first use. A name can have several ids (two instances adding it at
+ * once): it is written with the first one and matched with all of them.
+ */
+@Component
+public class AuthorDictionary implements DisposableBean {
+
+    private static final int NOT_FOUND = -1;
+
+    private final AuthorRepository repository;
+    private final TransactionTemplate ownTransaction;
+    private final Duration refreshInterval;
+    private final ThreadPoolTaskScheduler refresher = new ThreadPoolTaskScheduler();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object creation = new Object();
+
+    private final StringDictionary names = new StringDictionary();
+    private final LongLongHashMap codeById = new LongLongHashMap();
+    private int[] idOfCode = new int[64];
+
+    /**
+     * Every known author as parallel id and name code columns, for matching filters.
+     */
+    private int[] ids = new int[64];
+    private int[] codes = new int[64];
+    private int size;
+
+    private int lastRefreshedId;
+
+    public AuthorDictionary(AuthorRepository repository, PlatformTransactionManager transactionManager,
+                            @Value("${library.authors.refresh-interval:PT30S}") Duration refreshInterval) {
+        this.repository = repository;
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.refreshInterval = refreshInterval;
+        refresher.setThreadNamePrefix("author-refresh-");
+        refresher.initialize();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void load() {
+        refresh();
+        refresher.scheduleAtFixedRate(this::refresh, Instant.now().plus(refreshInterval), refreshInterval);
+    }
+
+    /**
+     * Reads the authors added since the last refresh.
+     */
+    public synchronized void refresh() {
+        while (true) {
+            List<Author> batch = repository.findTop1000ByIdGreaterThanOrderByIdAsc(lastRefreshedId);
+            if (batch.isEmpty()) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                batch.forEach(author -> put(author.getId(), author.getName()));
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lastRefreshedId = batch.get(batch.size() - 1).getId();
+        }
+    }
+
+    /**
+     * @return the id books of {@code name} are written with, after creating the author if there is none; null for
+     * a null name
+     */
+    public Integer idOf(String name) {
+        if (name == null) {
+            return null;
+        }
+        int id = knownIdOf(name);
+        if (id != NOT_FOUND) {
+            return id;
+        }
+        synchronized (creation) {
+            id = knownIdOf(name);
+            if (id != NOT_FOUND) {
+                return id;
+            }
+            Author author = ownTransaction.execute(status -> repository.findFirstByNameOrderByIdAsc(name)
+                    .orElseGet(() -> repository.save(Author.builder().name(name).build())));
+            lock.writeLock().lock();
+            try {
+                put(author.getId(), author.getName());
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return author.getId();
+        }
+    }
+
+    /**
+     * @return the author's name, the same instance for every call; null for a null or unknown id
+     */
+    public String nameOf(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int code = (int) codeById.get(id, NOT_FOUND);
+            if (code != NOT_FOUND) {
+                return names.decode(code);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Optional<Author> author = ownTransaction.execute(status -> repository.findById(id));
+        if (!author.isPresent()) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try {
+            return names.decode(put(id, author.get().getName()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the authors whose name contains {@code value}, ignoring case; the name check is done once per distinct
+     * name.
+     */
+    public List<Integer> idsContaining(String value) {
+        String needle = value.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            boolean[] matches = names.containing(needle);
+            List<Integer> matching = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (matches[codes[i]]) {
+                    matching.add(ids[i]);
+                }
+            }
+            return matching;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int knownIdOf(String name) {
+        lock.readLock().lock();
+        try {
+            int code = names.codeOf(name);
+            return code == NOT_FOUND ? NOT_FOUND : idOfCode[code];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the name's code
+     */
+    private int put(int id, String name) {
+        int known = (int) codeById.get(id, NOT_FOUND);
+        if (known != NOT_FOUND) {
+            return known;
+        }
+        int code = names.encode(name);
+        if (code >= idOfCode.length) {
+            idOfCode = Arrays.copyOf(idOfCode, Math.max(code + 1, idOfCode.length * 2));
+        }
+        if (idOfCode[code] == 0) {
+            // ids start at 1: a name's first id
+            idOfCode[code] = id;
+        }
+        codeById.put(id, code);
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            codes = Arrays.copyOf(codes, size * 2);
+        }
+        ids[size] = id;
+        codes[size] = code;
+        size++;
+        return code;
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdown();
+    }
+}
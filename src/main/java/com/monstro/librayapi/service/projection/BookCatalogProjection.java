@@ -0,0 +1,324 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.service.BookChangedEvent;
+import com.monstro.librayapi.util.LongLongHashMap;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory columnar copy of the catalogue used to answer facet counts without going to the database.
+ *
+ * Authors and titles are dictionary encoded; each row holds only their int codes, and per-code counts are kept
+ * up to date as {@link BookChangedEvent}s come in. Filtering works like {@code BookService.find}: case-insensitive
+ * "contains" on title, author and isbn, with the author and title checks done once per distinct value.
+ * Prefix completions of authors and titles come from a {@link PrefixCompletion} over each dictionary.
+ *
+ * Like {@link IsbnIndex}, it skips events older than the last one applied to a book and updates that arrive after
+ * the book's delete, which would otherwise put the book back.
+ */
+@Component
+public class BookCatalogProjection {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final long FREE = 0L;
+
+    private final BookRepository repository;
+    private final AuthorDictionary authorDictionary;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final StringDictionary authors = new StringDictionary();
+    private final StringDictionary titles = new StringDictionary();
+    private final LongLongHashMap rowOfId = new LongLongHashMap();
+    private final LongLongHashMap versionById = new LongLongHashMap();
+    private final Roaring64NavigableMap deletedIds = new Roaring64NavigableMap();
+
+    private long[] ids = new long[1024];
+    private int[] authorCodes = new int[1024];
+    private int[] titleCodes = new int[1024];
+    private String[] lowerCaseIsbns = new String[1024];
+    private int rowCount;
+    private int[] freeRows = new int[64];
+    private int freeRowCount;
+
+    private int[] authorCounts = new int[64];
+    private int[] titleCounts = new int[64];
+    private int liveRows;
+
+    private final PrefixCompletion authorCompletion = new PrefixCompletion(authors);
+    private final PrefixCompletion titleCompletion = new PrefixCompletion(titles);
+    private boolean loading;
+
+    public BookCatalogProjection(BookRepository repository, AuthorDictionary authorDictionary) {
+        this.repository = repository;
+        this.authorDictionary = authorDictionary;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        lock.writeLock().lock();
+        loading = true;
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Book> batch = new ArrayList<>(repository.findTop1000ByIdGreaterThanOrderByIdAsc(lastId));
+                if (batch.isEmpty()) {
+                    return;
+                }
+                // sharded storage returns a batch per shard: only the lowest ids are certain to be complete
+                batch.sort(Comparator.comparing(Book::getId));
+                List<Book> complete = batch.subList(0, Math.min(LOAD_BATCH_SIZE, batch.size()));
+                complete.forEach(this::upsert);
+                lastId = complete.get(complete.size() - 1).getId();
+            }
+        } finally {
+            loading = false;
+            authorCompletion.rebuild(authorCounts);
+            titleCompletion.rebuild(titleCounts);
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long id = event.getId();
+            if (event.getChange() == BookChangedEvent.Change.DELETED) {
+                deletedIds.addLong(id);
+                versionById.remove(id);
+                remove(id);
+            } else if (event.getBook() != null && !deletedIds.contains(id) && !isStale(id, event.getVersion())) {
+                upsert(event.getBook());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public BookFacets facets(Book filter, int limit) {
+        String author = lowerCase(filter.getAuthor());
+        String title = lowerCase(filter.getTitle());
+        String isbn = lowerCase(filter.getIsbn());
+
+        lock.readLock().lock();
+        try {
+            if (author == null && title == null && isbn == null) {
+                return new BookFacets(liveRows, top(authors, authorCounts, limit), top(titles, titleCounts, limit));
+            }
+
+            int[] authorHits = new int[authors.size()];
+            int[] titleHits = new int[titles.size()];
+            long[] total = new long[1];
+
+            forEachMatchingRow(author, title, isbn, row -> {
+                total[0]++;
+                count(authorHits, authorCodes[row]);
+                count(titleHits, titleCodes[row]);
+            });
+            return new BookFacets(total[0], top(authors, authorHits, limit), top(titles, titleHits, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the books matching the filter, with the same "contains" matching as {@link #facets}.
+     */
+    public RoaringBitmap matchingIds(Book filter) {
+        String author = lowerCase(filter.getAuthor());
+        String title = lowerCase(filter.getTitle());
+        String isbn = lowerCase(filter.getIsbn());
+
+        RoaringBitmap matching = new RoaringBitmap();
+        lock.readLock().lock();
+        try {
+            forEachMatchingRow(author, title, isbn, row -> matching.add(LoanedBooks.bit(ids[row])));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matching;
+    }
+
+    private void forEachMatchingRow(String author, String title, String isbn, IntConsumer action) {
+        boolean[] authorMatches = author == null ? null : authors.containing(author);
+        boolean[] titleMatches = title == null ? null : titles.containing(title);
+        for (int row = 0; row < rowCount; row++) {
+            if (ids[row] == FREE
+                    || !matches(authorMatches, authorCodes[row])
+                    || !matches(titleMatches, titleCodes[row])
+                    || (isbn != null && (lowerCaseIsbns[row] == null || !lowerCaseIsbns[row].contains(isbn)))) {
+                continue;
+            }
+            action.accept(row);
+        }
+    }
+
+    /**
+     * Top authors and titles starting with {@code prefix}, case-insensitive, by number of books.
+     */
+    public BookCompletions complete(String prefix, int limit) {
+        String lowerCasePrefix = prefix == null ? "" : lowerCase(prefix);
+        lock.readLock().lock();
+        try {
+            return new BookCompletions(authorCompletion.complete(lowerCasePrefix, limit),
+                    titleCompletion.complete(lowerCasePrefix, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isStale(long id, Long version) {
+        if (version == null) {
+            return false;
+        }
+        if (version <= versionById.get(id, -1)) {
+            return true;
+        }
+        versionById.put(id, version);
+        return false;
+    }
+
+    private void upsert(Book book) {
+        long id = book.getId();
+        int row = (int) rowOfId.get(id, -1);
+        int oldAuthorCode = -1;
+        int oldTitleCode = -1;
+        if (row < 0) {
+            row = allocateRow();
+            ids[row] = id;
+            rowOfId.put(id, row);
+            liveRows++;
+        } else {
+            oldAuthorCode = authorCodes[row];
+            oldTitleCode = titleCodes[row];
+            uncount(authorCounts, oldAuthorCode);
+            uncount(titleCounts, oldTitleCode);
+        }
+
+        // loaded books only have the author id; the dictionary's name is shared with every other user of it
+        String author = book.getAuthor() != null ? book.getAuthor() : authorDictionary.nameOf(book.getAuthorId());
+        authorCodes[row] = author == null ? -1 : authors.encode(author);
+        titleCodes[row] = book.getTitle() == null ? -1 : titles.encode(book.getTitle());
+        lowerCaseIsbns[row] = lowerCase(book.getIsbn());
+
+        authorCounts = grow(authorCounts, authors.size());
+        titleCounts = grow(titleCounts, titles.size());
+        count(authorCounts, authorCodes[row]);
+        count(titleCounts, titleCodes[row]);
+
+        if (!loading) {
+            track(authorCompletion, authorCounts, oldAuthorCode);
+            track(authorCompletion, authorCounts, authorCodes[row]);
+            track(titleCompletion, titleCounts, oldTitleCode);
+            track(titleCompletion, titleCounts, titleCodes[row]);
+        }
+    }
+
+    private void remove(long id) {
+        int row = (int) rowOfId.get(id, -1);
+        if (row < 0) {
+            return;
+        }
+        rowOfId.remove(id);
+        uncount(authorCounts, authorCodes[row]);
+        uncount(titleCounts, titleCodes[row]);
+        track(authorCompletion, authorCounts, authorCodes[row]);
+        track(titleCompletion, titleCounts, titleCodes[row]);
+        ids[row] = FREE;
+        lowerCaseIsbns[row] = null;
+        liveRows--;
+
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+        }
+        freeRows[freeRowCount++] = row;
+    }
+
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if (rowCount == ids.length) {
+            int capacity = rowCount * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            authorCodes = Arrays.copyOf(authorCodes, capacity);
+            titleCodes = Arrays.copyOf(titleCodes, capacity);
+            lowerCaseIsbns = Arrays.copyOf(lowerCaseIsbns, capacity);
+        }
+        return rowCount++;
+    }
+
+    private static List<BookFacets.FacetCount> top(StringDictionary dictionary, int[] counts, int limit) {
+        int size = Math.min(dictionary.size(), counts.length);
+        Comparator<Integer> byCount = Comparator.<Integer>comparingInt(code -> counts[code])
+                .thenComparing(dictionary::decode, Comparator.reverseOrder());
+        PriorityQueue<Integer> smallest = new PriorityQueue<>(Math.max(1, Math.min(limit, size) + 1), byCount);
+        for (int code = 0; code < size && limit > 0; code++) {
+            if (counts[code] == 0) {
+                continue;
+            }
+            smallest.add(code);
+            if (smallest.size() > limit) {
+                smallest.poll();
+            }
+        }
+
+        List<BookFacets.FacetCount> result = new ArrayList<>(smallest.size());
+        while (!smallest.isEmpty()) {
+            int code = smallest.poll();
+            result.add(new BookFacets.FacetCount(dictionary.decode(code), counts[code]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static boolean matches(boolean[] matchingCodes, int code) {
+        return matchingCodes == null || (code >= 0 && matchingCodes[code]);
+    }
+
+    private static void count(int[] counts, int code) {
+        if (code >= 0) {
+            counts[code]++;
+        }
+    }
+
+    private static void uncount(int[] counts, int code) {
+        if (code >= 0) {
+            counts[code]--;
+        }
+    }
+
+    private static void track(PrefixCompletion completion, int[] counts, int code) {
+        if (code >= 0) {
+            completion.set(code, counts[code]);
+        }
+    }
+
+    private static int[] grow(int[] counts, int size) {
+        return size <= counts.length ? counts : Arrays.copyOf(counts, Math.max(size, counts.length * 2));
+    }
+
+    private static String lowerCase(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+}
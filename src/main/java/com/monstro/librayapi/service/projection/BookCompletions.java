@@ -0,0 +1,15 @@
+package com.monstro.librayapi.service.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BookCompletions {
+
+    private List<BookFacets.FacetCount> authors;
+
+    private List<BookFacets.FacetCount> titles;
+}
@@ -0,0 +1,24 @@
+package com.monstro.librayapi.service.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BookFacets {
+
+    private long total;
+
+    private List<FacetCount> authors;
+
+    private List<FacetCount> titles;
+
+    @Data
+    @AllArgsConstructor
+    public static class FacetCount {
+        private String value;
+        private long count;
+    }
+}
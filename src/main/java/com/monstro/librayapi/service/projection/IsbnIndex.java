@@ -0,0 +1,147 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.projection.BookIsbnKey;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.service.BookChangedEvent;
+import com.monstro.librayapi.util.Isbn;
+import com.monstro.librayapi.util.LongLongHashMap;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ISBN-13 key to book id, held in primitive maps so a duplicate check or an ISBN lookup needs neither a query
+ * nor an allocation. It follows committed {@link BookChangedEvent}s of this instance only: a miss is not proof
+ * that the ISBN is free, which is why the {@code isbn_key} column stays unique in the database.
+ *
+ * Events are applied in the order their transactions' threads get to them, not in commit order, so the update of a
+ * book can arrive after its delete, or after a later update. Deleted ids are remembered, and later updates of them
+ * skipped: applied, they would keep the ISBN of a deleted book registered and refuse every new book with it. The
+ * version of the last event applied to a book is kept too, and events with the same or an older one are skipped.
+ */
+@Component
+public class IsbnIndex {
+
+    public static final long NOT_FOUND = -1L;
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final BookRepository repository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongLongHashMap idByKey = new LongLongHashMap();
+    private final LongLongHashMap keyById = new LongLongHashMap();
+    private final LongLongHashMap versionById = new LongLongHashMap();
+    private final Roaring64NavigableMap deletedIds = new Roaring64NavigableMap();
+
+    public IsbnIndex(BookRepository repository) {
+        this.repository = repository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            long lastId = 0;
+            while (true) {
+                List<BookIsbnKey> batch = new ArrayList<>(
+                        repository.findTop1000ByIsbnKeyNotNullAndIdGreaterThanOrderByIdAsc(lastId));
+                if (batch.isEmpty()) {
+                    return;
+                }
+                // sharded storage returns a batch per shard: only the lowest ids are certain to be complete
+                batch.sort(Comparator.comparing(BookIsbnKey::getId));
+                List<BookIsbnKey> complete = batch.subList(0, Math.min(LOAD_BATCH_SIZE, batch.size()));
+                for (BookIsbnKey row : complete) {
+                    put(row.getIsbnKey(), row.getId());
+                }
+                lastId = complete.get(complete.size() - 1).getId();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long id = event.getId();
+            if (event.getChange() == BookChangedEvent.Change.DELETED) {
+                deletedIds.addLong(id);
+                versionById.remove(id);
+            } else if (deletedIds.contains(id) || isStale(id, event.getVersion())) {
+                return;
+            }
+            remove(id);
+            if (event.getChange() != BookChangedEvent.Change.DELETED && event.getBook() != null) {
+                long isbnKey = Isbn.toIsbn13(event.getBook().getIsbn());
+                if (isbnKey != Isbn.INVALID) {
+                    put(isbnKey, id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the id of the book with this ISBN-13 key, or {@link #NOT_FOUND}
+     */
+    public long idOf(long isbnKey) {
+        lock.readLock().lock();
+        try {
+            return idByKey.get(isbnKey, NOT_FOUND);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isStale(long id, Long version) {
+        if (version == null) {
+            return false;
+        }
+        if (version <= versionById.get(id, NOT_FOUND)) {
+            return true;
+        }
+        versionById.put(id, version);
+        return false;
+    }
+
+    private void put(long isbnKey, long id) {
+        long previousId = idByKey.get(isbnKey, NOT_FOUND);
+        if (previousId != NOT_FOUND && previousId != id) {
+            keyById.remove(previousId);
+        }
+        idByKey.put(isbnKey, id);
+        keyById.put(id, isbnKey);
+    }
+
+    private void remove(long id) {
+        long isbnKey = keyById.get(id, NOT_FOUND);
+        if (isbnKey != NOT_FOUND) {
+            keyById.remove(id);
+            idByKey.remove(isbnKey);
+        }
+    }
+}
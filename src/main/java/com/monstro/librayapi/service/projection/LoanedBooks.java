@@ -0,0 +1,140 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.repository.LoanRepository;
+import com.monstro.librayapi.service.LoanChangedEvent;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ids of the books that are out on loan, in a compressed bitmap, so checking out a book that is in, or an
+ * availability filter, needs no query. Loaded from the open loans at startup; a checkout reserves its book here
+ * before the loan is inserted, and committed returns give books back. It only sees the loans of this instance: a miss
+ * is not proof that the book is in, which is why the database allows one open loan per book
+ * ({@code ux_loan_open_book}), and a hit is not proof that it is out, which is why a checkout confirms a hit with a
+ * query.
+ */
+@Component
+public class LoanedBooks {
+
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    private final LoanRepository repository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final RoaringBitmap loaned = new RoaringBitmap();
+
+    public LoanedBooks(LoanRepository repository) {
+        this.repository = repository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            long lastBookId = 0;
+            while (true) {
+                List<Long> batch = new ArrayList<>(repository.findOpenLoanBookIds(lastBookId, PageRequest.of(0, LOAD_BATCH_SIZE)));
+                if (batch.isEmpty()) {
+                    return;
+                }
+                // sharded storage returns a batch per shard: only the lowest ids are certain to be complete
+                Collections.sort(batch);
+                List<Long> complete = batch.subList(0, Math.min(LOAD_BATCH_SIZE, batch.size()));
+                complete.forEach(bookId -> loaned.add(bit(bookId)));
+                lastBookId = complete.get(complete.size() - 1);
+            }
+        } finally {
+            loaned.runOptimize();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the book as loaned unless it already is.
+     *
+     * @return false when the book is already out
+     */
+    public boolean tryCheckout(long bookId) {
+        lock.writeLock().lock();
+        try {
+            return loaned.checkedAdd(bit(bookId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gives the book back, after a checkout whose loan was not stored or a return.
+     */
+    public void release(long bookId) {
+        lock.writeLock().lock();
+        try {
+            loaned.remove(bit(bookId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isLoaned(long bookId) {
+        lock.readLock().lock();
+        try {
+            return loaned.contains(bit(bookId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the loaned books from {@code bookIds}.
+     */
+    public void removeLoaned(RoaringBitmap bookIds) {
+        lock.readLock().lock();
+        try {
+            bookIds.andNot(loaned);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLoanedCount() {
+        lock.readLock().lock();
+        try {
+            return loaned.getLongCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanChanged(LoanChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (Long bookId : event.getBookIds()) {
+                if (event.getChange() == LoanChangedEvent.Change.RETURNED) {
+                    loaned.remove(bit(bookId));
+                } else {
+                    loaned.add(bit(bookId));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Book ids are positive ints (the API exposes them as such), so each is its own bit.
+     */
+    static int bit(long bookId) {
+        return Math.toIntExact(bookId);
+    }
+}
@@ -0,0 +1,314 @@
+package com.monstro.librayapi.service.projection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Top-K completions of a prefix over the values of a {@link StringDictionary}, ranked by a per-code count.
+ *
+ * The codes are kept sorted by lower-cased value, so the values starting with a prefix are one contiguous range,
+ * found with two binary searches (the same range a trie would hold under the prefix node, without a node per
+ * character). A max segment tree over the counts in that order gives the K largest of the range in O(K log n).
+ * Count changes update the tree in place; codes added since the last sort wait in a small delta that queries scan,
+ * until it is merged into the sorted codes. The merge compares only the delta's values, O(d log n), and copies the
+ * rest, so it stays short under the projection's write lock however large the dictionary. Not thread safe.
+ */
+public class PrefixCompletion {
+
+    static final int DELTA_LIMIT = 4096;
+
+    private static final int NOT_INDEXED = -1;
+    private static final int IN_DELTA = -2;
+
+    private final StringDictionary dictionary;
+
+    private int[] sortedCodes = new int[0];
+    private int leaves = 1;
+    private int[] tree = new int[2];
+
+    private int[] deltaCodes = new int[16];
+    private int deltaSize;
+
+    /**
+     * By code: its count, and its position in {@link #sortedCodes} or {@link #NOT_INDEXED} / {@link #IN_DELTA}.
+     */
+    private int[] counts = new int[64];
+    private int[] positionOfCode = filled(new int[64], 0, NOT_INDEXED);
+
+    public PrefixCompletion(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Records the current count of {@code code}, a code that is new to this index included.
+     */
+    public void set(int code, int count) {
+        if (code < 0) {
+            return;
+        }
+        ensureCapacity(code + 1);
+        counts[code] = count;
+
+        int position = positionOfCode[code];
+        if (position >= 0) {
+            update(position, count);
+        } else if (position == NOT_INDEXED) {
+            if (deltaSize == deltaCodes.length) {
+                deltaCodes = Arrays.copyOf(deltaCodes, deltaSize * 2);
+            }
+            deltaCodes[deltaSize++] = code;
+            positionOfCode[code] = IN_DELTA;
+            if (deltaSize > DELTA_LIMIT) {
+                mergeDelta();
+            }
+        }
+    }
+
+    /**
+     * Sorts every code of the dictionary and rebuilds the tree with {@code counts} (by code); for bulk loads.
+     */
+    public void rebuild(int[] counts) {
+        int size = dictionary.size();
+        ensureCapacity(size);
+        System.arraycopy(counts, 0, this.counts, 0, Math.min(counts.length, size));
+        int[] codes = new int[size];
+        for (int code = 0; code < size; code++) {
+            codes[code] = code;
+        }
+        sort(codes);
+        index(codes);
+        deltaSize = 0;
+    }
+
+    /**
+     * Sorts the delta on its own and merges it in: each delta code finds its place among the sorted codes after the
+     * previous one with a binary search, and the sorted codes in between are copied over unchanged.
+     */
+    private void mergeDelta() {
+        int[] delta = Arrays.copyOf(deltaCodes, deltaSize);
+        sort(delta);
+
+        int[] merged = new int[sortedCodes.length + delta.length];
+        int from = 0;
+        int to = 0;
+        for (int code : delta) {
+            int position = insertionPoint(code, from);
+            System.arraycopy(sortedCodes, from, merged, to, position - from);
+            to += position - from;
+            from = position;
+            merged[to++] = code;
+        }
+        System.arraycopy(sortedCodes, from, merged, to, sortedCodes.length - from);
+        index(merged);
+        deltaSize = 0;
+    }
+
+    /**
+     * Makes {@code codes}, in sorted order, the indexed codes and builds the tree over their counts.
+     */
+    private void index(int[] codes) {
+        int size = codes.length;
+        sortedCodes = codes;
+        for (int position = 0; position < size; position++) {
+            positionOfCode[codes[position]] = position;
+        }
+
+        leaves = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        tree = new int[2 * leaves];
+        for (int position = 0; position < size; position++) {
+            tree[leaves + position] = countOf(sortedCodes[position]);
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Bottom-up merge sort of codes by lower-cased value, then code, without boxing them.
+     */
+    private void sort(int[] codes) {
+        int[] buffer = new int[codes.length];
+        for (int width = 1; width < codes.length; width *= 2) {
+            for (int low = 0; low < codes.length; low += 2 * width) {
+                int middle = Math.min(low + width, codes.length);
+                int high = Math.min(low + 2 * width, codes.length);
+                int left = low;
+                int right = middle;
+                int out = low;
+                while (left < middle && right < high) {
+                    buffer[out++] = compare(codes[right], codes[left]) < 0 ? codes[right++] : codes[left++];
+                }
+                while (left < middle) {
+                    buffer[out++] = codes[left++];
+                }
+                while (right < high) {
+                    buffer[out++] = codes[right++];
+                }
+            }
+            System.arraycopy(buffer, 0, codes, 0, codes.length);
+        }
+    }
+
+    /**
+     * First position at or after {@code from} whose code sorts after {@code code}.
+     */
+    private int insertionPoint(int code, int from) {
+        int low = from;
+        int high = sortedCodes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(sortedCodes[middle], code) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int code, int other) {
+        int byValue = dictionary.decodeLowerCase(code).compareTo(dictionary.decodeLowerCase(other));
+        return byValue != 0 ? byValue : Integer.compare(code, other);
+    }
+
+    /**
+     * The at most {@code limit} values starting with {@code lowerCasePrefix} that have the highest counts, highest
+     * first, ties in alphabetical order. Values with a zero count are left out.
+     */
+    public List<BookFacets.FacetCount> complete(String lowerCasePrefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        List<Candidate> candidates = new ArrayList<>();
+
+        int from = lowerBound(lowerCasePrefix);
+        int to = upperBound(lowerCasePrefix, from);
+        collectTop(from, to, limit, candidates);
+
+        for (int i = 0; i < deltaSize; i++) {
+            int code = deltaCodes[i];
+            if (countOf(code) > 0 && dictionary.decodeLowerCase(code).startsWith(lowerCasePrefix)) {
+                candidates.add(new Candidate(code, countOf(code)));
+            }
+        }
+
+        candidates.sort(Comparator.<Candidate>comparingInt(candidate -> -candidate.count)
+                .thenComparing(candidate -> dictionary.decodeLowerCase(candidate.code))
+                .thenComparingInt(candidate -> candidate.code));
+        List<BookFacets.FacetCount> result = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size() && i < limit; i++) {
+            Candidate candidate = candidates.get(i);
+            result.add(new BookFacets.FacetCount(dictionary.decode(candidate.code), candidate.count));
+        }
+        return result;
+    }
+
+    /**
+     * Best-first walk of the tree nodes covering [from, to): a node's key is its maximum and its first position, which
+     * bounds every leaf under it, so leaves come out by count and then by position.
+     */
+    private void collectTop(int from, int to, int limit, List<Candidate> candidates) {
+        if (from >= to) {
+            return;
+        }
+        PriorityQueue<long[]> queue = new PriorityQueue<>(Comparator.<long[]>comparingLong(node -> -node[1])
+                .thenComparingLong(node -> node[2]));
+        for (int low = from + leaves, high = to + leaves, level = 0; low < high; low >>= 1, high >>= 1, level++) {
+            if ((low & 1) == 1) {
+                queue.add(nodeEntry(low++, level));
+            }
+            if ((high & 1) == 1) {
+                queue.add(nodeEntry(--high, level));
+            }
+        }
+
+        int found = 0;
+        while (!queue.isEmpty() && found < limit) {
+            long[] entry = queue.poll();
+            int node = (int) entry[0];
+            if (entry[1] == 0) {
+                return;
+            }
+            if (node >= leaves) {
+                int code = sortedCodes[node - leaves];
+                candidates.add(new Candidate(code, tree[node]));
+                found++;
+            } else {
+                int level = (int) entry[3] - 1;
+                queue.add(nodeEntry(2 * node, level));
+                queue.add(nodeEntry(2 * node + 1, level));
+            }
+        }
+    }
+
+    private long[] nodeEntry(int node, int level) {
+        long first = ((long) node << level) - leaves;
+        return new long[]{node, tree[node], first, level};
+    }
+
+    private void update(int position, int count) {
+        int node = position + leaves;
+        tree[node] = count;
+        for (node >>= 1; node > 0; node >>= 1) {
+            tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = sortedCodes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dictionary.decodeLowerCase(sortedCodes[middle]).compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = sortedCodes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dictionary.decodeLowerCase(sortedCodes[middle]).startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int codes) {
+        if (codes > counts.length) {
+            int capacity = Math.max(codes, counts.length * 2);
+            counts = Arrays.copyOf(counts, capacity);
+            positionOfCode = filled(Arrays.copyOf(positionOfCode, capacity), positionOfCode.length, NOT_INDEXED);
+        }
+    }
+
+    private int countOf(int code) {
+        return code < counts.length ? counts[code] : 0;
+    }
+
+    private static int[] filled(int[] array, int from, int value) {
+        Arrays.fill(array, from, array.length, value);
+        return array;
+    }
+
+    private static class Candidate {
+        final int code;
+        final int count;
+
+        Candidate(int code, int count) {
+            this.code = code;
+            this.count = count;
+        }
+    }
+}
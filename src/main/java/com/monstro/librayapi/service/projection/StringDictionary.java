@@ -0,0 +1,61 @@
+package com.monstro.librayapi.service.projection;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of repeated strings: every distinct value gets a dense int code. Codes are never reused,
+ * so a value that disappears from the catalogue keeps its code (with a zero count). Not thread safe.
+ */
+public class StringDictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[64];
+    private String[] lowerCaseValues = new String[64];
+    private int size;
+
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            lowerCaseValues = Arrays.copyOf(lowerCaseValues, size * 2);
+        }
+        values[size] = value;
+        lowerCaseValues[size] = value.toLowerCase(Locale.ROOT);
+        codes.put(value, size);
+        return size++;
+    }
+
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    public String decode(int code) {
+        return values[code];
+    }
+
+    public String decodeLowerCase(int code) {
+        return lowerCaseValues[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Which codes contain the lower-cased needle, computed once per distinct value instead of once per row.
+     */
+    public boolean[] containing(String lowerCaseNeedle) {
+        boolean[] matches = new boolean[size];
+        for (int code = 0; code < size; code++) {
+            matches[code] = lowerCaseValues[code].contains(lowerCaseNeedle);
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,87 @@
+package com.monstro.librayapi.util;
+
+/**
+ * ISBN parsing without allocation: hyphens and spaces are skipped, the checksum is validated and ISBN-10 is
+ * converted to ISBN-13, giving one {@code long} key per book whatever form the ISBN was written in.
+ */
+public final class Isbn {
+
+    public static final long INVALID = -1L;
+
+    private static final long ISBN_978 = 978_000_000_000L;
+    private static final long PREFIX_DIVISOR = 10_000_000_000L;
+
+    private Isbn() {
+    }
+
+    /**
+     * @return the ISBN-13 as a number, or {@link #INVALID} when the value is not a valid ISBN-10 or ISBN-13
+     */
+    public static long toIsbn13(CharSequence value) {
+        if (value == null) {
+            return INVALID;
+        }
+        int count = 0;
+        long digits = 0;
+        int sum10 = 0;
+        int sum13 = 0;
+        boolean checkX = false;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if ((c == 'X' || c == 'x') && count == 9) {
+                digit = 10;
+                checkX = true;
+            } else {
+                return INVALID;
+            }
+            if (count == 13 || (checkX && digit != 10)) {
+                return INVALID;
+            }
+            if (count < 10) {
+                sum10 += digit * (10 - count);
+            }
+            sum13 += (count & 1) == 0 ? digit : digit * 3;
+            if (digit < 10) {
+                digits = digits * 10 + digit;
+            }
+            count++;
+        }
+
+        if (count == 13) {
+            long prefix = digits / PREFIX_DIVISOR;
+            if (checkX || sum13 % 10 != 0 || (prefix != 978 && prefix != 979)) {
+                return INVALID;
+            }
+            return digits;
+        }
+        if (count == 10) {
+            if (sum10 % 11 != 0) {
+                return INVALID;
+            }
+            long first12 = ISBN_978 + (checkX ? digits : digits / 10);
+            return first12 * 10 + checkDigit13(first12);
+        }
+        return INVALID;
+    }
+
+    public static boolean isValid(CharSequence value) {
+        return toIsbn13(value) != INVALID;
+    }
+
+    private static int checkDigit13(long first12) {
+        int sum = 0;
+        for (int position = 11; position >= 0; position--) {
+            int digit = (int) (first12 % 10);
+            sum += (position & 1) == 0 ? digit : digit * 3;
+            first12 /= 10;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
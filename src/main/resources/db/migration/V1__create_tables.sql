@@ -0,0 +1,17 @@
+create table book (
+    id bigint generated by default as identity primary key,
+    author varchar(255),
+    isbn varchar(255),
+    isbn_key bigint,
+    title varchar(255)
+);
+
+create unique index ux_book_isbn_key on book (isbn_key);
+
+create table loan (
+    id bigint generated by default as identity primary key,
+    customer varchar(255),
+    loan_data date,
+    returned boolean,
+    book_id bigint references book (id)
+);
@@ -0,0 +1,14 @@
+-- existsByIsbn and findByIsbn
+create unique index ux_book_isbn on book (isbn);
+
+-- find filters and sorts compare lower-cased values; H2 has no function-based indexes, so the lower-cased
+-- values are computed columns.
+alter table book add column author_lower varchar(255) as lower(author);
+alter table book add column title_lower varchar(255) as lower(title);
+create index ix_book_author_lower on book (author_lower);
+create index ix_book_title_lower on book (title_lower);
+
+-- loans of a book (open or not), of a customer, and by loan date
+create index ix_loan_book_returned on loan (book_id, returned);
+create index ix_loan_customer on loan (customer);
+create index ix_loan_loan_data on loan (loan_data);
@@ -0,0 +1,4 @@
+-- at most one open loan per book, across instances: the computed column is null once a loan is returned, and a
+-- unique index allows any number of nulls
+alter table loan add column open_book_id bigint as (case when returned then null else book_id end);
+create unique index ux_loan_open_book on loan (open_book_id);
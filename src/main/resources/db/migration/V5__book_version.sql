@@ -0,0 +1,2 @@
+-- optimistic locking: incremented by every update, also orders the change events of a book
+alter table book add column version bigint default 0 not null;
@@ -0,0 +1,40 @@
+package com.monstro.librayapi.api;
+
+import com.monstro.librayapi.model.projection.BookSummary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompactPageWriterTest {
+
+    @Test
+    @DisplayName("Should write the whole page and leave the output open")
+    public void writeTest() throws Exception {
+        ClosingAwareOutputStream out = new ClosingAwareOutputStream();
+        BookSummary book = new BookSummary(1L, "Dune", 1, "Herbert", "123");
+
+        new CompactPageWriter().write(new PageImpl<>(Collections.singletonList(book), PageRequest.of(0, 20), 1), out);
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(
+                "{\"page\":0,\"size\":20,\"totalElements\":1,"
+                        + "\"content\":[{\"id\":1,\"title\":\"Dune\",\"author\":\"Herbert\",\"isbn\":\"123\"}]}");
+        assertThat(out.closed).isFalse();
+    }
+
+    private static class ClosingAwareOutputStream extends ByteArrayOutputStream {
+
+        boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.monstro.librayapi.api.availability;
+
+import com.monstro.librayapi.service.LoanChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class AvailabilityHubTest {
+
+    AvailabilityHub hub = new AvailabilityHub(1, 2, 3, Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofSeconds(5), 1);
+
+    @AfterEach
+    public void tearDown(){
+        hub.destroy();
+    }
+
+    private static HttpStatus statusOf(Throwable exception) {
+        assertThat(exception).isInstanceOf(ResponseStatusException.class);
+        return ((ResponseStatusException) exception).getStatus();
+    }
+
+    @Test
+    @DisplayName("Should refuse subscriptions without isbns, with too many or beyond the subscriber limit")
+    public void limitsTest(){
+        assertThat(statusOf(catchThrowable(() -> hub.subscribe(Collections.emptyList())))).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(statusOf(catchThrowable(() -> hub.subscribe(Arrays.asList("1", "2", "3", "4"))))).isEqualTo(HttpStatus.BAD_REQUEST);
+
+        hub.subscribe(Collections.singletonList("1"));
+        hub.subscribe(Collections.singletonList("2"));
+
+        assertThat(statusOf(catchThrowable(() -> hub.subscribe(Collections.singletonList("3"))))).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(hub.getSubscribers()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should send every change or replace it with a newer one, only to the book's subscribers")
+    public void fanOutTest() throws Exception {
+        hub.subscribe(Arrays.asList("978-0-306-40615-7", "123"));
+        hub.subscribe(Collections.singletonList("456"));
+
+        for (int i = 0; i < 100; i++) {
+            LoanChangedEvent.Change change = i % 2 == 0 ? LoanChangedEvent.Change.CREATED : LoanChangedEvent.Change.RETURNED;
+            hub.onLoanChanged(new LoanChangedEvent(change, Collections.singletonList(1L), Collections.singletonList("0306406152")));
+        }
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (hub.getSent() + hub.getCoalesced() < 100 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(hub.getSent() + hub.getCoalesced()).isEqualTo(100);
+        assertThat(hub.getSent()).isGreaterThan(0);
+    }
+
+    @Test
+    @DisplayName("Should drop a subscriber whose write stalls and keep serving the others")
+    public void stalledSendTest() throws Exception {
+        CountDownLatch stalledWrite = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AvailabilityHub stallingHub = new AvailabilityHub(1, 2, 3, Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofMillis(100), 1) {
+            boolean first = true;
+
+            @Override
+            SseEmitter newEmitter(long timeoutMillis) {
+                if (!first) {
+                    return super.newEmitter(timeoutMillis);
+                }
+                first = false;
+                return new SseEmitter(timeoutMillis) {
+                    @Override
+                    public void send(SseEventBuilder builder) {
+                        stalledWrite.countDown();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                };
+            }
+        };
+        try {
+            stallingHub.subscribe(Collections.singletonList("123"));
+            stallingHub.subscribe(Collections.singletonList("456"));
+
+            stallingHub.publish("123", false);
+            assertThat(stalledWrite.await(5, TimeUnit.SECONDS)).isTrue();
+            stallingHub.publish("456", false);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (stallingHub.getSent() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(stallingHub.getSent()).isEqualTo(1);
+            assertThat(stallingHub.getStalled()).isEqualTo(1);
+            assertThat(stallingHub.getSubscribers()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            stallingHub.destroy();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.monstro.librayapi.api.bulkhead;
+
+import com.monstro.librayapi.config.datasource.ReadYourWritesGuard;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+public class BulkheadTest {
+
+    Bulkhead bulkhead = new Bulkhead("test", 1, 1, Duration.ofSeconds(1));
+
+    @AfterEach
+    public void tearDown(){
+        bulkhead.destroy();
+    }
+
+    @Test
+    @DisplayName("Should answer 503 when every thread and queue slot is taken")
+    public void rejectWhenFullTest(){
+        bulkhead.submit(() -> "running");
+        bulkhead.submit(() -> "queued");
+
+        Throwable exception = catchThrowable(() -> bulkhead.submit(() -> "rejected"));
+
+        assertThat(exception).isInstanceOf(ResponseStatusException.class);
+        assertThat(((ResponseStatusException) exception).getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(bulkhead.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should take requests again once a task has finished")
+    public void releaseAfterTaskTest() throws Exception {
+        WebAsyncTask<String> first = bulkhead.submit(() -> "first");
+        bulkhead.submit(() -> "second");
+
+        assertThat(first.getCallable().call()).isEqualTo("first");
+
+        assertThat(bulkhead.submit(() -> "third")).isNotNull();
+        assertThat(bulkhead.getRejected()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should give back the permit of a queued task when its request times out")
+    public void timeoutWhileQueuedTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new BlockingController(bulkhead, release)).build();
+        try {
+            mvc.perform(get("/blocking")).andExpect(request().asyncStarted());
+            MvcResult queued = mvc.perform(get("/blocking")).andExpect(request().asyncStarted()).andReturn();
+
+            timeOut(queued);
+
+            assertThat(bulkhead.getTimeouts()).isEqualTo(1);
+            assertThat(bulkhead.submit(() -> "next")).isNotNull();
+            assertThat(bulkhead.getRejected()).isZero();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should interrupt a running task when its request times out")
+    public void timeoutWhileRunningTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingController controller = new BlockingController(bulkhead, release);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+        try {
+            MvcResult running = mvc.perform(get("/blocking")).andExpect(request().asyncStarted()).andReturn();
+            assertThat(controller.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            timeOut(running);
+
+            assertThat(controller.interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(bulkhead.submit(() -> "next")).isNotNull();
+            assertThat(bulkhead.submit(() -> "after")).isNotNull();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should not leave the worker interrupted when a task is cancelled as it returns")
+    public void cancelAtReturnTest() throws Exception {
+        CancelAtReturnController controller = new CancelAtReturnController(bulkhead);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        mvc.perform(get("/cancel-at-return")).andExpect(request().asyncStarted());
+
+        assertThat(controller.returned.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(controller.interruptedAfterReturn).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should run the task as the client that submitted it")
+    public void readYourWritesClientTest() throws Exception {
+        ReadYourWritesGuard guard = new ReadYourWritesGuard(Duration.ofSeconds(5), 10);
+        Bulkhead routed = new Bulkhead("routed", 1, 1, Duration.ofSeconds(1), guard);
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            guard.setCurrentClient("client-1");
+            WebAsyncTask<String> task = routed.submit(guard::getCurrentClient);
+            guard.clearCurrentClient();
+
+            assertThat(worker.submit(task.getCallable()).get(5, TimeUnit.SECONDS)).isEqualTo("client-1");
+            assertThat(worker.submit(guard::getCurrentClient).get(5, TimeUnit.SECONDS)).isNull();
+        } finally {
+            worker.shutdownNow();
+            routed.destroy();
+        }
+    }
+
+    private static void timeOut(MvcResult result) throws Exception {
+        timeOut(result.getRequest());
+    }
+
+    private static void timeOut(HttpServletRequest request) throws Exception {
+        for (AsyncListener listener : ((MockAsyncContext) request.getAsyncContext()).getListeners()) {
+            listener.onTimeout(null);
+        }
+    }
+
+    /**
+     * Not a {@code @RestController}, so the application's component scan leaves it out.
+     */
+    @RequestMapping
+    @ResponseBody
+    static class BlockingController {
+
+        final Bulkhead bulkhead;
+        final CountDownLatch release;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        BlockingController(Bulkhead bulkhead, CountDownLatch release) {
+            this.bulkhead = bulkhead;
+            this.release = release;
+        }
+
+        @GetMapping("/blocking")
+        public WebAsyncTask<String> blocking() {
+            return bulkhead.submit(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "released";
+            });
+        }
+    }
+
+    /**
+     * Times its own request out just before the task returns, and checks the worker thread once it has.
+     */
+    @RequestMapping
+    @ResponseBody
+    static class CancelAtReturnController {
+
+        final Bulkhead bulkhead;
+        final CountDownLatch returned = new CountDownLatch(1);
+        volatile boolean interruptedAfterReturn;
+
+        CancelAtReturnController(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        @GetMapping("/cancel-at-return")
+        public WebAsyncTask<String> cancelAtReturn(HttpServletRequest request) {
+            WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor("interrupt-check", new CallableProcessingInterceptor() {
+                @Override
+                public <T> void postProcess(NativeWebRequest webRequest, Callable<T> task, Object concurrentResult) {
+                    interruptedAfterReturn = Thread.currentThread().isInterrupted();
+                    returned.countDown();
+                }
+            });
+            return bulkhead.submit(() -> {
+                timeOut(request);
+                return "returned";
+            });
+        }
+    }
+
+    @Test
+    @DisplayName("Should publish its metrics tagged with its name")
+    public void metricsTest(){
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        bulkhead.bindTo(registry);
+
+        bulkhead.submit(() -> "running");
+        bulkhead.submit(() -> "queued");
+        catchThrowable(() -> bulkhead.submit(() -> "rejected"));
+
+        assertThat(registry.get("library.bulkhead.rejected").tag("bulkhead", "test").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("library.bulkhead.queued").tag("bulkhead", "test").gauge().value()).isZero();
+        assertThat(registry.get("library.bulkhead.active").tag("bulkhead", "test").gauge().value()).isZero();
+    }
+}
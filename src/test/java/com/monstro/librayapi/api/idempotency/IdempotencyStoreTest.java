@@ -0,0 +1,185 @@
+package com.monstro.librayapi.api.idempotency;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdempotencyStoreTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final IdempotencyStore store = new IdempotencyStore(Duration.ofMinutes(1), 2, Duration.ofSeconds(5), clock::get);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Integer count() {
+        return calls.incrementAndGet();
+    }
+
+    @Test
+    @DisplayName("Should return the first result for a repeated key")
+    public void replayTest(){
+        Integer first = store.execute("book", "k1", "body", this::count);
+        Integer retry = store.execute("book", "k1", "body", this::count);
+
+        assertThat(retry).isEqualTo(first);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should run every request without a key")
+    public void withoutKeyTest(){
+        store.execute("book", null, "body", this::count);
+        store.execute("book", "", "body", this::count);
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Should keep keys apart per scope")
+    public void scopeTest(){
+        store.execute("book", "k1", "body", this::count);
+        store.execute("loan", "k1", "body", this::count);
+
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should reject a key reused for another request")
+    public void keyReusedTest(){
+        store.execute("book", "k1", "body", this::count);
+
+        Throwable exception = Assertions.catchThrowable(() -> store.execute("book", "k1", "other body", this::count));
+
+        assertThat(exception).isInstanceOf(ResponseStatusException.class);
+        assertThat(((ResponseStatusException) exception).getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should run again after a failure")
+    public void failureNotKeptTest(){
+        Throwable exception = Assertions.catchThrowable(() -> store.execute("book", "k1", "body", () -> {
+            throw new IllegalStateException("down");
+        }));
+
+        Integer retry = store.execute("book", "k1", "body", this::count);
+
+        assertThat(exception).isInstanceOf(IllegalStateException.class);
+        assertThat(retry).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should forget keys after the ttl and beyond the maximum size")
+    public void expiryAndBoundTest(){
+        store.execute("book", "k1", "body", this::count);
+        clock.addAndGet(Duration.ofMinutes(2).toNanos());
+        store.execute("book", "k1", "body", this::count);
+        store.execute("book", "k2", "body", this::count);
+        store.execute("book", "k3", "body", this::count);
+        store.execute("book", "k1", "body", this::count);
+
+        assertThat(calls.get()).isEqualTo(5);
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should make a concurrent duplicate wait for the first request")
+    public void concurrentDuplicateTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(() -> store.execute("loan", "k1", "body", () -> {
+                started.countDown();
+                await(release);
+                return count();
+            }));
+            started.await(5, TimeUnit.SECONDS);
+            Future<Integer> duplicate = executor.submit(() -> store.execute("loan", "k1", "body", this::count));
+
+            Thread.sleep(100);
+            assertThat(duplicate.isDone()).isFalse();
+            release.countDown();
+
+            assertThat(duplicate.get(5, TimeUnit.SECONDS)).isEqualTo(first.get(5, TimeUnit.SECONDS));
+            assertThat(calls.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep a running request's key beyond the maximum size")
+    public void runningNotEvictedTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(() -> store.execute("loan", "k1", "body", () -> {
+                started.countDown();
+                await(release);
+                return count();
+            }));
+            started.await(5, TimeUnit.SECONDS);
+            store.execute("loan", "k2", "body", this::count);
+            store.execute("loan", "k3", "body", this::count);
+
+            Future<Integer> retry = executor.submit(() -> store.execute("loan", "k1", "body", this::count));
+            release.countDown();
+
+            assertThat(retry.get(5, TimeUnit.SECONDS)).isEqualTo(first.get(5, TimeUnit.SECONDS));
+            assertThat(calls.get()).isEqualTo(3);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should answer 409 to a duplicate when the first request runs past the wait timeout")
+    public void waitTimeoutTest() throws Exception {
+        IdempotencyStore impatient = new IdempotencyStore(Duration.ofMinutes(1), 2, Duration.ofMillis(50), clock::get);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> impatient.execute("loan", "k1", "body", () -> {
+                started.countDown();
+                await(release);
+                return count();
+            }));
+            started.await(5, TimeUnit.SECONDS);
+
+            Throwable exception = Assertions.catchThrowable(() -> impatient.execute("loan", "k1", "body", this::count));
+
+            assertThat(exception).isInstanceOf(ResponseStatusException.class);
+            assertThat(((ResponseStatusException) exception).getStatus()).isEqualTo(HttpStatus.CONFLICT);
+            assertThat(calls.get()).isEqualTo(0);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package com.monstro.librayapi.api.resource;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.monstro.librayapi.api.bulkhead.BulkheadConfig;
 import com.monstro.librayapi.api.dto.BookDTO;
+import com.monstro.librayapi.api.idempotency.IdempotencyStore;
 import com.monstro.librayapi.exception.BusinessException;
 import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
 import com.monstro.librayapi.service.BookService;
+import com.monstro.librayapi.service.projection.BookCatalogProjection;
+import com.monstro.librayapi.service.projection.BookCompletions;
+import com.monstro.librayapi.service.projection.BookFacets;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,26 +25,34 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import java.util.Arrays;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @WebMvcTest(controllers = BookController.class)
+@Import({IdempotencyStore.class, BulkheadConfig.class})
 @AutoConfigureMockMvc
 public class BookControllerTest {
 
@@ -47,6 +64,9 @@ public class BookControllerTest {
     @MockBean
     BookService bookService;
 
+    @MockBean
+    BookCatalogProjection catalogProjection;
+
     @Test
     @DisplayName("Should create book with successfully.")
     public void createBookTest() throws Exception {
@@ -74,6 +94,58 @@ public class BookControllerTest {
                 .andExpect(jsonPath("isbn").value(dto.getIsbn()));
     }
 
+    @Test
+    @DisplayName("Should answer a retried create with the same Idempotency-Key from the first result")
+    public void createBookIdempotentRetryTest() throws Exception {
+        BookDTO dto = createNewBookDTO();
+        Book savedBook = Book.builder().id((long) 10).author("artur").title("test").isbn("001").build();
+
+        BDDMockito
+                .given(bookService.save(Mockito.any(Book.class)))
+                .willReturn(savedBook);
+
+        String json = new ObjectMapper().writeValueAsString(dto);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API)
+                .header(IdempotencyStore.HEADER, "create-book-retry")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        mvc.perform(request).andExpect(status().isCreated());
+        mvc.perform(request)
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("id").value(10))
+                .andExpect(jsonPath("isbn").value(dto.getIsbn()));
+
+        Mockito.verify(bookService, Mockito.times(1)).save(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Should reject an Idempotency-Key reused for another book")
+    public void createBookIdempotencyKeyReusedTest() throws Exception {
+        BDDMockito
+                .given(bookService.save(Mockito.any(Book.class)))
+                .willReturn(Book.builder().id((long) 10).author("artur").title("test").isbn("001").build());
+
+        MockHttpServletRequestBuilder first = MockMvcRequestBuilders
+                .post(BOOK_API)
+                .header(IdempotencyStore.HEADER, "create-book-reused")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(createNewBookDTO()));
+        MockHttpServletRequestBuilder other = MockMvcRequestBuilders
+                .post(BOOK_API)
+                .header(IdempotencyStore.HEADER, "create-book-reused")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(BookDTO.builder().author("artur").title("test").isbn("002").build()));
+
+        mvc.perform(first).andExpect(status().isCreated());
+        mvc.perform(other)
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("errors", hasSize(1)));
+    }
+
     private BookDTO createNewBookDTO() {
         return BookDTO.builder().author("artur").title("test").isbn("001").build();
     }
@@ -129,10 +201,10 @@ public class BookControllerTest {
         Long id = Long.valueOf(12);
 
 
-        Book book =  Book.builder().id((long) 10).author("artur").title("test").isbn("001").build();
+        BookSummary book = new BookSummary((long) 10, "test", 1, "artur", "001");
 
         BDDMockito
-                .given(bookService.getById(id))
+                .given(bookService.getSummaryById(id))
                 .willReturn(Optional.of(book));
 
 
@@ -153,7 +225,7 @@ public class BookControllerTest {
     @DisplayName("Should return error not found a book")
     public void getBookNotFoundTest() throws Exception{
         BDDMockito
-                .given(bookService.getById(Mockito.anyLong()))
+                .given(bookService.getSummaryById(Mockito.anyLong()))
                 .willReturn(Optional.empty());
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -167,8 +239,8 @@ public class BookControllerTest {
     @DisplayName("Should delete a book")
     public void deleteBookTest() throws Exception{
         BDDMockito
-                .given(bookService.getById(Mockito.anyLong()))
-                .willReturn(Optional.of(Book.builder().id((long) 11).build()));
+                .given(bookService.deleteById(Mockito.anyLong()))
+                .willReturn(true);
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
                 .delete(BOOK_API.concat("/"+1));
@@ -181,8 +253,8 @@ public class BookControllerTest {
     @DisplayName("Should not found a book in delete")
     public void deleteNotFoundBookTest() throws Exception{
         BDDMockito
-                .given(bookService.getById(Mockito.anyLong()))
-                .willReturn(Optional.empty());
+                .given(bookService.deleteById(Mockito.anyLong()))
+                .willReturn(false);
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
                 .delete(BOOK_API.concat("/"+1));
@@ -198,13 +270,6 @@ public class BookControllerTest {
         BookDTO dto = createNewBookDTO();
         String json = new ObjectMapper().writeValueAsString(dto);
 
-        Book book = Book.builder()
-                .id((long) 11)
-                .title("11")
-                .author("11")
-                .isbn("11")
-                .build();
-
         Book updateBook = Book.builder()
                 .id((long) 11)
                 .title(dto.getTitle())
@@ -212,13 +277,15 @@ public class BookControllerTest {
                 .isbn(dto.getIsbn())
                 .build();
 
-        BDDMockito
-                .given(bookService.getById(id))
-                .willReturn(Optional.of(book));
+        Book changes = Book.builder()
+                .title(dto.getTitle())
+                .author(dto.getAuthor())
+                .isbn(dto.getIsbn())
+                .build();
 
         BDDMockito
-                .given(bookService.update(updateBook))
-                .willReturn(updateBook);
+                .given(bookService.updateById(id, changes))
+                .willReturn(Optional.of(updateBook));
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
                 .put(BOOK_API.concat("/"+id))
@@ -240,7 +307,7 @@ public class BookControllerTest {
         String json = new ObjectMapper().writeValueAsString(createNewBookDTO());
 
         BDDMockito
-                .given(bookService.getById(Mockito.anyLong()))
+                .given(bookService.updateById(Mockito.anyLong(), Mockito.any(Book.class)))
                 .willReturn(Optional.empty());
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -253,32 +320,211 @@ public class BookControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Should return 409 when the book was changed by another request")
+    public void updateBookConflictTest() throws Exception{
+        String json = new ObjectMapper().writeValueAsString(createNewBookDTO());
+
+        BDDMockito
+                .given(bookService.updateById(Mockito.anyLong(), Mockito.any(Book.class)))
+                .willThrow(new ObjectOptimisticLockingFailureException(Book.class, 1L));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .put(BOOK_API.concat("/"+1))
+                .content(json)
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON);
+
+        mvc.perform(request)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("errors[0]").value("Book was changed by another request"));
+    }
+
     @Test
     @DisplayName("Should filter books")
     public void findBooksTest() throws Exception{
         Long id = Long.valueOf(11);
 
-        Book book = Book.builder()
-                .id((long) 11)
-                .title("11")
-                .author("11")
-                .isbn("11")
-                .build();
-
+        BookSummary book = new BookSummary((long) 11, "11", 1, "11", "11");
 
         BDDMockito
-                .given(bookService.find(Mockito.any(Book.class), Mockito.any(Pageable.class)))
-                .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0,100),1));
+                .given(bookService.findSummaries(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<BookSummary>(Arrays.asList(book), PageRequest.of(0,100),1));
 
         String queryString = String.format("?title=%s&author=%s&page=0&size=100", book.getTitle(), book.getAuthor());
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat(queryString)).accept(MediaType.APPLICATION_JSON);
+        MvcResult started = mvc.perform(request)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
 
-        mvc.perform(request)
+        mvc.perform(asyncDispatch(started))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("content", Matchers.hasSize(1)))
                 .andExpect(jsonPath("totalElements").value(1))
                 .andExpect(jsonPath("pageable.pageSize").value(100))
                 .andExpect(jsonPath("pageable.pageNumber").value(0));
     }
+
+    @Test
+    @DisplayName("Should filter only available books when asked for it")
+    public void findAvailableBooksTest() throws Exception{
+        BookSummary book = new BookSummary((long) 11, "11", 1, "11", "11");
+
+        BDDMockito
+                .given(bookService.findAvailableSummaries(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<BookSummary>(Arrays.asList(book), PageRequest.of(0,100),1));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?author=11&availableOnly=true&page=0&size=100"))
+                .accept(MediaType.APPLICATION_JSON);
+        MvcResult started = mvc.perform(request)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("content[0].id").value(11));
+        Mockito.verify(bookService, Mockito.never()).findSummaries(Mockito.any(Book.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Should return facet counts for the filter")
+    public void facetsTest() throws Exception{
+        BookFacets facets = new BookFacets(3,
+                Arrays.asList(new BookFacets.FacetCount("artur", 2), new BookFacets.FacetCount("cest", 1)),
+                Arrays.asList(new BookFacets.FacetCount("test", 3)));
+
+        BDDMockito
+                .given(catalogProjection.facets(Mockito.any(Book.class), Mockito.eq(5)))
+                .willReturn(facets);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/facets?title=test&limit=5"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("total").value(3))
+                .andExpect(jsonPath("authors", hasSize(2)))
+                .andExpect(jsonPath("authors[0].value").value("artur"))
+                .andExpect(jsonPath("authors[0].count").value(2))
+                .andExpect(jsonPath("titles[0].count").value(3));
+    }
+
+    @Test
+    @DisplayName("Should refuse a facets or autocomplete limit beyond the cap")
+    public void limitTooLargeTest() throws Exception{
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/facets?limit=2000000000")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("limit must be between 1 and " + BookController.MAX_LIMIT));
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/autocomplete?prefix=he&limit=" + Integer.MAX_VALUE)).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(catalogProjection);
+    }
+
+    @Test
+    @DisplayName("Should return the completions of a prefix")
+    public void autocompleteTest() throws Exception{
+        BookCompletions completions = new BookCompletions(
+                Arrays.asList(new BookFacets.FacetCount("Herbert", 2)),
+                Arrays.asList(new BookFacets.FacetCount("Hamlet", 1), new BookFacets.FacetCount("Heidi", 1)));
+
+        BDDMockito
+                .given(catalogProjection.complete("he", 3))
+                .willReturn(completions);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/autocomplete?prefix=he&limit=3"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("authors", hasSize(1)))
+                .andExpect(jsonPath("authors[0].value").value("Herbert"))
+                .andExpect(jsonPath("authors[0].count").value(2))
+                .andExpect(jsonPath("titles", hasSize(2)))
+                .andExpect(jsonPath("titles[1].value").value("Heidi"));
+    }
+
+    @Test
+    @DisplayName("Should return a book as cbor when asked for it")
+    public void getBookAsCborTest() throws Exception{
+        Long id = Long.valueOf(12);
+        BookSummary book = new BookSummary((long) 10, "test", 1, "artur", "001");
+
+        BDDMockito
+                .given(bookService.getSummaryById(id))
+                .willReturn(Optional.of(book));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/"+id))
+                .accept(MediaType.APPLICATION_CBOR);
+
+        byte[] body = mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BookDTO dto = new ObjectMapper(new CBORFactory()).readValue(body, BookDTO.class);
+        assertThat(dto.getTitle()).isEqualTo(book.getTitle());
+        assertThat(dto.getAuthor()).isEqualTo(book.getAuthor());
+        assertThat(dto.getIsbn()).isEqualTo(book.getIsbn());
+    }
+
+    @Test
+    @DisplayName("Should return a page of books as smile when asked for it")
+    public void findBooksAsSmileTest() throws Exception{
+        BookSummary book = new BookSummary((long) 11, "11", 1, "11", "11");
+        MediaType smile = MediaType.valueOf("application/x-jackson-smile");
+
+        BDDMockito
+                .given(bookService.findSummaries(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<BookSummary>(Arrays.asList(book), PageRequest.of(0,100),1));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?page=0&size=100"))
+                .accept(smile);
+        MvcResult started = mvc.perform(request)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        byte[] body = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(smile))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode page = new ObjectMapper(new SmileFactory()).readTree(body);
+        assertThat(page.get("totalElements").asLong()).isEqualTo(1);
+        assertThat(page.get("content").get(0).get("isbn").asText()).isEqualTo("11");
+    }
+
+    @Test
+    @DisplayName("Should filter books into a compact page")
+    public void findCompactBooksTest() throws Exception{
+        BookSummary book = new BookSummary((long) 11, "11", 1, "11", "11");
+
+        BDDMockito
+                .given(bookService.findSummaries(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<BookSummary>(Arrays.asList(book), PageRequest.of(0,100),1));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?title=11&page=0&size=100&compact=true"))
+                .accept(MediaType.APPLICATION_JSON);
+        MvcResult started = mvc.perform(request)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("content[0].id").value(11))
+                .andExpect(jsonPath("content[0].isbn").value("11"))
+                .andExpect(jsonPath("totalElements").value(1))
+                .andExpect(jsonPath("size").value(100))
+                .andExpect(jsonPath("page").value(0))
+                .andExpect(jsonPath("pageable").doesNotExist());
+    }
 }
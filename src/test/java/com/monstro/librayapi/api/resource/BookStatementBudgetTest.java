@@ -0,0 +1,121 @@
+package com.monstro.librayapi.api.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monstro.librayapi.api.dto.BookDTO;
+import com.monstro.librayapi.budget.QueryBudget;
+import com.monstro.librayapi.budget.StatementCounter;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.service.projection.AuthorDictionary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Statement budgets of the book endpoints against the real repositories: a change that adds a query to one of
+ * these requests (an N+1 select, a read before a write) fails here.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(StatementCounter.class)
+public class BookStatementBudgetTest {
+
+    static String BOOK_API = "/api/book";
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    AuthorDictionary authors;
+
+    Book book;
+
+    /**
+     * The author is known beforehand: adding an author is a one-off, outside these budgets.
+     */
+    @BeforeEach
+    public void setUp(){
+        book = bookRepository.save(Book.builder().title("Budget").authorId(authors.idOf("Author")).isbn("budget-1").build());
+    }
+
+    @AfterEach
+    public void tearDown(){
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Should read a book with one statement")
+    @QueryBudget(endpoint = "GET /api/book/{id}", max = 1)
+    public void getBookBudgetTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + book.getId()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Should filter books with at most a page and a count statement")
+    @QueryBudget(endpoint = "GET /api/book", max = 2)
+    public void findBooksBudgetTest() throws Exception {
+        MvcResult started = mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "?author=auth&page=0&size=1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements").value(1));
+    }
+
+    @Test
+    @DisplayName("Should create a book with an isbn check and an insert")
+    @QueryBudget(endpoint = "POST /api/book", max = 2)
+    public void createBookBudgetTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.post(BOOK_API)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(BookDTO.builder().title("New").author("Author").isbn("budget-2").build())))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    @DisplayName("Should update a book with a select and an update")
+    @QueryBudget(endpoint = "PUT /api/book/{id}", max = 2)
+    public void updateBookBudgetTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.put(BOOK_API + "/" + book.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(BookDTO.builder().title("Changed").author("Author").isbn("budget-1").build())))
+                .andExpect(status().isNoContent())
+                .andExpect(jsonPath("title").value("Changed"));
+    }
+
+    @Test
+    @DisplayName("Should delete a book with one statement")
+    @QueryBudget(endpoint = "DELETE /api/book/{id}", max = 1)
+    public void deleteBookBudgetTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.delete(BOOK_API + "/" + book.getId()))
+                .andExpect(status().isNoContent());
+    }
+
+    private String json(BookDTO dto) throws Exception {
+        return new ObjectMapper().writeValueAsString(dto);
+    }
+}
@@ -0,0 +1,134 @@
+package com.monstro.librayapi.api.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monstro.librayapi.api.availability.AvailabilityHub;
+import com.monstro.librayapi.api.dto.LoanBatchDTO;
+import com.monstro.librayapi.api.idempotency.IdempotencyStore;
+import com.monstro.librayapi.service.BookService;
+import com.monstro.librayapi.service.LoanBatchAction;
+import com.monstro.librayapi.service.LoanBatchItem;
+import com.monstro.librayapi.service.LoanChangedEvent;
+import com.monstro.librayapi.service.LoanService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@WebMvcTest(controllers = LoanController.class)
+@Import({IdempotencyStore.class, AvailabilityHub.class})
+@AutoConfigureMockMvc
+public class LoanControllerTest {
+
+    static String LOAN_API = "/api/loan";
+
+    @Autowired
+    MockMvc mvc;
+
+    @MockBean
+    BookService bookService;
+
+    @MockBean
+    LoanService loanService;
+
+    @Autowired
+    AvailabilityHub availabilityHub;
+
+    @Test
+    @DisplayName("Should return loans in batch and report each item")
+    public void batchReturnTest() throws Exception {
+        LoanBatchDTO dto = LoanBatchDTO.builder()
+                .action(LoanBatchAction.RETURN)
+                .loanIds(Arrays.asList(1L, 2L))
+                .isbns(Collections.singletonList("404"))
+                .build();
+
+        BDDMockito
+                .given(loanService.applyBatch(LoanBatchAction.RETURN, dto.getLoanIds(), dto.getIsbns()))
+                .willReturn(Arrays.asList(
+                        new LoanBatchItem("1", 1L, LoanBatchItem.Outcome.RETURNED),
+                        new LoanBatchItem("2", 2L, LoanBatchItem.Outcome.ALREADY_RETURNED),
+                        new LoanBatchItem("404", null, LoanBatchItem.Outcome.NOT_FOUND)));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(LOAN_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(dto));
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("applied").value(1))
+                .andExpect(jsonPath("items", hasSize(3)))
+                .andExpect(jsonPath("items[0].outcome").value("RETURNED"))
+                .andExpect(jsonPath("items[2].reference").value("404"))
+                .andExpect(jsonPath("items[2].outcome").value("NOT_FOUND"));
+    }
+
+    @Test
+    @DisplayName("Should refuse a batch without action")
+    public void batchWithoutActionTest() throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(LOAN_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(LoanBatchDTO.builder().loanIds(Arrays.asList(1L)).build()));
+
+        mvc.perform(request)
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(loanService);
+    }
+
+    @Test
+    @DisplayName("Should stream availability changes of the subscribed books")
+    public void availabilityStreamTest() throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(LOAN_API.concat("/availability?isbn=123&isbn=0306406152"))
+                .accept(MediaType.TEXT_EVENT_STREAM);
+
+        MvcResult result = mvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        availabilityHub.onLoanChanged(new LoanChangedEvent(LoanChangedEvent.Change.CREATED, Arrays.asList(1L, 9L), Arrays.asList("123", "999")));
+        availabilityHub.onLoanChanged(new LoanChangedEvent(LoanChangedEvent.Change.RETURNED, Collections.singletonList(2L),
+                Collections.singletonList("978-0-306-40615-7")));
+
+        String body = "";
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!body.contains("0306406152") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            body = result.getResponse().getContentAsString();
+        }
+        assertThat(body)
+                .contains("event:availability\ndata:{\"isbn\":\"123\",\"available\":false}")
+                .contains("event:availability\ndata:{\"isbn\":\"0306406152\",\"available\":true}")
+                .doesNotContain("999");
+        result.getRequest().getAsyncContext().complete();
+        assertThat(availabilityHub.getSubscribers()).isZero();
+    }
+}
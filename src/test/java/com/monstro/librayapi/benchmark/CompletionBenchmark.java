@@ -0,0 +1,89 @@
+package com.monstro.librayapi.benchmark;
+
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.service.projection.AuthorDictionary;
+import com.monstro.librayapi.service.projection.BookCatalogProjection;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time per {@code autocomplete} lookup on a catalogue projection loaded with generated books, for prefixes of one
+ * to four characters.
+ *
+ * Run from the test classpath, e.g.
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.monstro.librayapi.benchmark.CompletionBenchmark}.
+ * System properties: benchmark.books (default 2000000), benchmark.authors (default 200000),
+ * benchmark.iterations (default 100000).
+ */
+public class CompletionBenchmark {
+
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) {
+        int books = Integer.getInteger("benchmark.books", 2000000);
+        int authors = Integer.getInteger("benchmark.authors", 200000);
+        int iterations = Integer.getInteger("benchmark.iterations", 100000);
+
+        BookRepository repository = Mockito.mock(BookRepository.class);
+        Mockito.when(repository.findTop1000ByIdGreaterThanOrderByIdAsc(Mockito.anyLong())).thenAnswer(invocation -> {
+            long lastId = invocation.getArgument(0);
+            if (lastId >= books) {
+                return Collections.emptyList();
+            }
+            List<Book> batch = new ArrayList<>(BATCH);
+            for (long id = lastId + 1; id <= Math.min(lastId + BATCH, books); id++) {
+                batch.add(Book.builder().id(id).title(word(id * 7919) + " " + word(id)).author(word(id % authors))
+                        .isbn("isbn-" + id).build());
+            }
+            return batch;
+        });
+
+        long loadStart = System.nanoTime();
+        BookCatalogProjection projection = new BookCatalogProjection(repository, Mockito.mock(AuthorDictionary.class));
+        projection.load();
+        System.out.printf("loaded %d books in %.1f s%n", books, (System.nanoTime() - loadStart) / 1e9);
+
+        Random random = new Random(42);
+        System.out.printf("%-8s %14s%n", "prefix", "micros/op");
+        for (int round = 0; round < 2; round++) {
+            for (int length = 1; length <= 4; length++) {
+                long start = System.nanoTime();
+                long results = 0;
+                for (int i = 0; i < iterations; i++) {
+                    results += projection.complete(word(random.nextInt(books)).substring(0, length), 10)
+                            .getTitles().size();
+                }
+                long elapsed = System.nanoTime() - start;
+                if (round == 1) {
+                    System.out.printf("%-8d %14.2f%n", length, elapsed / 1e3 / iterations);
+                }
+                if (results == 0) {
+                    throw new IllegalStateException("no completions");
+                }
+            }
+        }
+    }
+
+    /**
+     * A pronounceable word of five to eight letters derived from {@code seed}.
+     */
+    private static String word(long seed) {
+        String consonants = "bcdfghklmnprstvz";
+        String vowels = "aeiou";
+        long value = Math.abs(seed * 0x9E3779B97F4A7C15L);
+        int length = 5 + (int) (value % 4);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value = value / 7 + i;
+            word.append(i % 2 == 0 ? consonants.charAt((int) (value % consonants.length()))
+                    : vowels.charAt((int) (value % vowels.length())));
+        }
+        word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        return word.toString();
+    }
+}
@@ -0,0 +1,419 @@
+package com.monstro.librayapi.benchmark;
+
+import com.monstro.librayapi.LibraryApiApplication;
+import com.monstro.librayapi.exception.BusinessException;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.entity.Loan;
+import com.monstro.librayapi.service.BookService;
+import com.monstro.librayapi.service.LoanBatchAction;
+import com.monstro.librayapi.service.LoanBatchItem;
+import com.monstro.librayapi.service.LoanService;
+import com.monstro.librayapi.service.projection.IsbnIndex;
+import com.monstro.librayapi.service.projection.LoanedBooks;
+import com.monstro.librayapi.util.Isbn;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Throughput, latency and invariants of the write paths under contention: book creates, updates and deletes, loans
+ * and returns, run by concurrent threads on an in-memory H2 database, in a fresh application context per run.
+ *
+ * Every operation picks a key, the ISBN of one book, uniformly, by a Zipf law or always the same one, from no
+ * contention to a single hot ISBN. Per operation a run reports how many were done, refused (a business rule or a
+ * constraint said no, e.g. ISBN already registered or book already loaned), failed, or skipped (no book or no open
+ * loan to act on), with their latency. It then checks that no ISBN was registered twice and no book loaned twice,
+ * as the threads saw it while running and in the tables afterwards, and that the in-memory ISBN index and loaned
+ * books agree with the tables.
+ *
+ * Run from the test classpath, e.g.
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.monstro.librayapi.benchmark.ContentionBenchmark}.
+ * System properties: benchmark.threads (default 1,2,4 and the core count), benchmark.skew (default
+ * uniform,zipf,hot), benchmark.keys (default 1000), benchmark.zipf (exponent, default 1.0), benchmark.seconds
+ * (default 5), benchmark.warmup (seconds, default 2), benchmark.mix (default
+ * save=25,update=25,delete=10,loan=25,return=15).
+ */
+public class ContentionBenchmark {
+
+    private enum Operation { SAVE, UPDATE, DELETE, LOAN, RETURN }
+
+    private enum Outcome { DONE, REFUSED, FAILED, SKIPPED }
+
+    public static void main(String[] args) throws Exception {
+        Set<Integer> threadCounts = new TreeSet<>();
+        String defaultThreads = "1,2,4," + Runtime.getRuntime().availableProcessors();
+        for (String threads : System.getProperty("benchmark.threads", defaultThreads).split(",")) {
+            threadCounts.add(Integer.parseInt(threads.trim()));
+        }
+        String[] skews = System.getProperty("benchmark.skew", "uniform,zipf,hot").split(",");
+        int keys = Integer.getInteger("benchmark.keys", 1000);
+        double exponent = Double.parseDouble(System.getProperty("benchmark.zipf", "1.0"));
+        long seconds = Integer.getInteger("benchmark.seconds", 5);
+        long warmupSeconds = Integer.getInteger("benchmark.warmup", 2);
+        int[] mix = parseMix(System.getProperty("benchmark.mix", "save=25,update=25,delete=10,loan=25,return=15"));
+
+        List<String> curve = new ArrayList<>();
+        for (String skew : skews) {
+            IntSupplier keyChooser = keyChooser(skew.trim(), keys, exponent);
+            for (int threads : threadCounts) {
+                curve.add(run(skew.trim(), keyChooser, keys, threads, mix, warmupSeconds, seconds));
+            }
+        }
+
+        System.out.printf("%n%-8s %8s %12s %11s%n", "skew", "threads", "ops/s", "violations");
+        curve.forEach(System.out::println);
+    }
+
+    /**
+     * @return the run's line of the scaling curve
+     */
+    private static String run(String skew, IntSupplier keyChooser, int keys, int threads, int[] mix,
+                              long warmupSeconds, long seconds) throws InterruptedException {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--logging.level.root=WARN", "--spring.main.banner-mode=off", "--spring.jpa.show-sql=false",
+                        // refused writes and closing each run's database are expected here
+                        "--logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=OFF",
+                        "--logging.level.org.springframework.beans.factory.support.DisposableBeanAdapter=ERROR",
+                        "--spring.datasource.generate-unique-name=true")) {
+            Workload workload = new Workload(context, keys);
+
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch finished = new CountDownLatch(threads);
+            long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(() -> {
+                    try {
+                        started.await();
+                        long began;
+                        while ((began = System.nanoTime()) < end) {
+                            Operation operation = pick(mix);
+                            Outcome outcome = workload.execute(operation, keyChooser.getAsInt());
+                            if (began >= measureFrom) {
+                                workload.record(operation, outcome, System.nanoTime() - began);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finished.countDown();
+                    }
+                }, "contention-" + i);
+                worker.start();
+            }
+            started.countDown();
+            finished.await();
+
+            System.out.printf("%n%s, %d threads%n", skew, threads);
+            long executed = workload.report(seconds);
+            int violations = workload.checkInvariants();
+            return String.format(Locale.ROOT, "%-8s %8d %12.0f %11d", skew, threads, executed / (double) seconds, violations);
+        }
+    }
+
+    private static class Workload {
+
+        private final BookService bookService;
+        private final LoanService loanService;
+        private final IsbnIndex isbnIndex;
+        private final LoanedBooks loanedBooks;
+        private final JdbcTemplate jdbc;
+
+        private final String[] isbns;
+
+        /**
+         * The book registered under each key as the threads see it, claimed by a delete while it runs; a save
+         * finding it taken saw an ISBN registered twice.
+         */
+        private final AtomicReferenceArray<Book> books;
+
+        /**
+         * The open loan of each key's book, claimed by a return while it runs; a loan finding it taken saw a book
+         * loaned twice.
+         */
+        private final AtomicLongArray openLoans;
+
+        private final LongAdder duplicateIsbnsSeen = new LongAdder();
+        private final LongAdder doubleLoansSeen = new LongAdder();
+
+        private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        private final Map<Operation, Timer> timers = new HashMap<>();
+        private final Map<Operation, LongAdder[]> outcomes = new HashMap<>();
+        private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+        Workload(ConfigurableApplicationContext context, int keys) {
+            bookService = context.getBean(BookService.class);
+            loanService = context.getBean(LoanService.class);
+            isbnIndex = context.getBean(IsbnIndex.class);
+            loanedBooks = context.getBean(LoanedBooks.class);
+            jdbc = context.getBean(JdbcTemplate.class);
+
+            isbns = new String[keys];
+            for (int key = 0; key < keys; key++) {
+                isbns[key] = isbn(key);
+            }
+            books = new AtomicReferenceArray<>(keys);
+            openLoans = new AtomicLongArray(keys);
+
+            for (Operation operation : Operation.values()) {
+                timers.put(operation, Timer.builder("contention." + operation.name().toLowerCase(Locale.ROOT))
+                        .publishPercentiles(0.5, 0.99)
+                        .register(registry));
+                LongAdder[] counts = new LongAdder[Outcome.values().length];
+                Arrays.setAll(counts, i -> new LongAdder());
+                outcomes.put(operation, counts);
+            }
+        }
+
+        Outcome execute(Operation operation, int key) {
+            try {
+                switch (operation) {
+                    case SAVE:
+                        return save(key);
+                    case UPDATE:
+                        return update(key);
+                    case DELETE:
+                        return delete(key);
+                    case LOAN:
+                        return loan(key);
+                    default:
+                        return giveBack(key);
+                }
+            } catch (BusinessException | DataIntegrityViolationException | OptimisticLockingFailureException e) {
+                return Outcome.REFUSED;
+            } catch (RuntimeException e) {
+                failures.computeIfAbsent(operation + " " + e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+                return Outcome.FAILED;
+            }
+        }
+
+        private Outcome save(int key) {
+            Book saved = bookService.save(Book.builder().title("Title " + key).author("Author " + key % 50)
+                    .isbn(isbns[key]).build());
+            if (!books.compareAndSet(key, null, saved)) {
+                duplicateIsbnsSeen.increment();
+            }
+            return Outcome.DONE;
+        }
+
+        private Outcome update(int key) {
+            Book book = books.get(key);
+            if (book == null) {
+                return Outcome.SKIPPED;
+            }
+            Book changes = Book.builder().title("Title " + key + " " + ThreadLocalRandom.current().nextInt(1000))
+                    .author(book.getAuthor()).isbn(book.getIsbn()).build();
+            return bookService.updateById(book.getId(), changes).isPresent() ? Outcome.DONE : Outcome.REFUSED;
+        }
+
+        private Outcome delete(int key) {
+            Book book = books.getAndSet(key, null);
+            if (book == null) {
+                return Outcome.SKIPPED;
+            }
+            boolean deleted;
+            try {
+                deleted = bookService.deleteById(book.getId());
+            } catch (RuntimeException e) {
+                // still registered, e.g. it has loans: anything saved under its ISBN meanwhile is a duplicate
+                if (!books.compareAndSet(key, null, book)) {
+                    duplicateIsbnsSeen.increment();
+                }
+                throw e;
+            }
+            return deleted ? Outcome.DONE : Outcome.REFUSED;
+        }
+
+        private Outcome loan(int key) {
+            Book book = books.get(key);
+            if (book == null) {
+                return Outcome.SKIPPED;
+            }
+            Loan loan = loanService.save(Loan.builder().customer("customer " + key).book(book)
+                    .loanData(LocalDate.now()).returned(false).build());
+            if (!openLoans.compareAndSet(key, 0, loan.getId())) {
+                doubleLoansSeen.increment();
+            }
+            return Outcome.DONE;
+        }
+
+        private Outcome giveBack(int key) {
+            long loanId = openLoans.getAndSet(key, 0);
+            if (loanId == 0) {
+                return Outcome.SKIPPED;
+            }
+            List<LoanBatchItem> items;
+            try {
+                items = loanService.applyBatch(LoanBatchAction.RETURN, Collections.singletonList(loanId), null);
+            } catch (RuntimeException e) {
+                // still open: any loan of the book made meanwhile is a second one
+                if (!openLoans.compareAndSet(key, 0, loanId)) {
+                    doubleLoansSeen.increment();
+                }
+                throw e;
+            }
+            return items.get(0).getOutcome() == LoanBatchItem.Outcome.RETURNED ? Outcome.DONE : Outcome.REFUSED;
+        }
+
+        void record(Operation operation, Outcome outcome, long nanos) {
+            outcomes.get(operation)[outcome.ordinal()].increment();
+            if (outcome != Outcome.SKIPPED) {
+                timers.get(operation).record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * @return the operations executed, skipped ones left out
+         */
+        long report(long seconds) {
+            System.out.printf("%-9s %10s %10s %8s %10s %10s %9s %9s %9s%n",
+                    "operation", "done", "refused", "failed", "skipped", "ops/s", "p50 us", "p99 us", "max us");
+            long executed = 0;
+            for (Operation operation : Operation.values()) {
+                LongAdder[] counts = outcomes.get(operation);
+                long done = counts[Outcome.DONE.ordinal()].sum();
+                long refused = counts[Outcome.REFUSED.ordinal()].sum();
+                long failed = counts[Outcome.FAILED.ordinal()].sum();
+                executed += done + refused + failed;
+
+                HistogramSnapshot latency = timers.get(operation).takeSnapshot();
+                System.out.printf(Locale.ROOT, "%-9s %10d %10d %8d %10d %10.0f %9.0f %9.0f %9.0f%n",
+                        operation.name().toLowerCase(Locale.ROOT), done, refused, failed,
+                        counts[Outcome.SKIPPED.ordinal()].sum(), (done + refused + failed) / (double) seconds,
+                        latency.percentileValues()[0].value(TimeUnit.MICROSECONDS),
+                        latency.percentileValues()[1].value(TimeUnit.MICROSECONDS),
+                        latency.max(TimeUnit.MICROSECONDS));
+            }
+            failures.forEach((failure, count) -> System.out.printf("failed: %s x %d%n", failure, count.sum()));
+            return executed;
+        }
+
+        /**
+         * Compares the tables with what the threads saw and with the in-memory views, once every thread is done.
+         *
+         * @return the violations found
+         */
+        int checkInvariants() {
+            int duplicateIsbnsStored = jdbc.queryForObject(
+                    "select count(*) from (select isbn from book group by isbn having count(*) > 1) duplicated", Integer.class);
+            int doubleLoansStored = jdbc.queryForObject(
+                    "select count(*) from (select book_id from loan where returned is not true group by book_id having count(*) > 1) loaned",
+                    Integer.class);
+
+            Map<Long, Long> idByIsbnKey = new HashMap<>();
+            jdbc.query("select id, isbn_key from book", row -> {
+                idByIsbnKey.put(row.getLong("isbn_key"), row.getLong("id"));
+            });
+            int staleIsbnIndex = 0;
+            for (String isbn : isbns) {
+                long isbnKey = Isbn.toIsbn13(isbn);
+                if (isbnIndex.idOf(isbnKey) != idByIsbnKey.getOrDefault(isbnKey, IsbnIndex.NOT_FOUND)) {
+                    staleIsbnIndex++;
+                }
+            }
+
+            Set<Long> loaned = new HashSet<>(jdbc.queryForList("select book_id from loan where returned is not true", Long.class));
+            int staleLoanedBooks = 0;
+            for (Long bookId : idByIsbnKey.values()) {
+                if (loanedBooks.isLoaned(bookId) != loaned.contains(bookId)) {
+                    staleLoanedBooks++;
+                }
+            }
+
+            System.out.printf("duplicate isbns: %d seen, %d stored; double loans: %d seen, %d stored; "
+                            + "stale isbn index entries: %d; stale loaned books: %d%n",
+                    duplicateIsbnsSeen.sum(), duplicateIsbnsStored, doubleLoansSeen.sum(), doubleLoansStored,
+                    staleIsbnIndex, staleLoanedBooks);
+            return (int) (duplicateIsbnsSeen.sum() + doubleLoansSeen.sum()) + duplicateIsbnsStored + doubleLoansStored
+                    + staleIsbnIndex + staleLoanedBooks;
+        }
+    }
+
+    private static IntSupplier keyChooser(String skew, int keys, double exponent) {
+        switch (skew) {
+            case "uniform":
+                return () -> ThreadLocalRandom.current().nextInt(keys);
+            case "hot":
+                return () -> 0;
+            case "zipf":
+                // key k is drawn with a weight of 1 / (k + 1)^exponent
+                double[] cumulative = new double[keys];
+                double total = 0;
+                for (int key = 0; key < keys; key++) {
+                    total += 1 / Math.pow(key + 1, exponent);
+                    cumulative[key] = total;
+                }
+                double sum = total;
+                return () -> {
+                    int found = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble(sum));
+                    return Math.min(keys - 1, found >= 0 ? found : -found - 1);
+                };
+            default:
+                throw new IllegalArgumentException("benchmark.skew takes uniform, zipf or hot, not " + skew);
+        }
+    }
+
+    /**
+     * @return the cumulative weight of each operation, in {@link Operation} order
+     */
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[Operation.values().length];
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split("=");
+            weights[Operation.valueOf(weight[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Integer.parseInt(weight[1].trim());
+        }
+        Arrays.parallelPrefix(weights, Integer::sum);
+        if (weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("benchmark.mix has no operation with a weight: " + mix);
+        }
+        return weights;
+    }
+
+    private static Operation pick(int[] mix) {
+        int drawn = ThreadLocalRandom.current().nextInt(mix[mix.length - 1]);
+        int operation = 0;
+        while (drawn >= mix[operation]) {
+            operation++;
+        }
+        return Operation.values()[operation];
+    }
+
+    /**
+     * A valid ISBN-13 per key, so creates and updates go through the ISBN index.
+     */
+    private static String isbn(int key) {
+        String first12 = Long.toString(978_000_000_000L + key);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (first12.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return first12 + (10 - sum % 10) % 10;
+    }
+}
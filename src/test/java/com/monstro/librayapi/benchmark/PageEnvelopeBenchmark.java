@@ -0,0 +1,86 @@
+package com.monstro.librayapi.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monstro.librayapi.api.CompactPageWriter;
+import com.monstro.librayapi.api.dto.BookDTO;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
+import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Allocation and time per response of {@code GET /api/book} for the default {@code PageImpl<BookDTO>} envelope and
+ * the compact streamed one, leaving out the database query.
+ *
+ * Run from the test classpath, e.g.
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.monstro.librayapi.benchmark.PageEnvelopeBenchmark}.
+ * System properties: benchmark.pageSize (default 1000), benchmark.iterations (default 2000).
+ */
+public class PageEnvelopeBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int pageSize = Integer.getInteger("benchmark.pageSize", 1000);
+        int iterations = Integer.getInteger("benchmark.iterations", 2000);
+
+        PageRequest pageRequest = PageRequest.of(0, pageSize);
+        List<Book> books = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            books.add(Book.builder().id((long) i).title("Title " + i).author("Author " + i % 50).isbn(String.format("978%010d", i)).build());
+        }
+        Page<Book> page = new PageImpl<>(books, pageRequest, pageSize * 10L);
+        Page<BookSummary> summaries = page.map(book -> new BookSummary(book.getId(), book.getTitle(),
+                (int) (book.getId() % 50) + 1, book.getAuthor(), book.getIsbn()));
+
+        ModelMapper modelMapper = new ModelMapper();
+        ObjectMapper objectMapper = new ObjectMapper();
+        CompactPageWriter compactPageWriter = new CompactPageWriter();
+
+        Response pageImpl = out -> {
+            List<BookDTO> list = page.getContent()
+                    .stream()
+                    .map(entity -> modelMapper.map(entity, BookDTO.class))
+                    .collect(Collectors.toList());
+            objectMapper.writeValue(out, new PageImpl<BookDTO>(list, pageRequest, page.getTotalElements()));
+        };
+        Response compact = out -> compactPageWriter.write(summaries, out);
+
+        System.out.printf("%-10s %12s %16s %14s%n", "envelope", "bytes", "allocated/op", "micros/op");
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            measure("pageImpl", pageImpl, iterations, report);
+            measure("compact", compact, iterations, report);
+        }
+    }
+
+    private static void measure(String name, Response response, int iterations, boolean report) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            out.reset();
+            response.write(out);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        if (report) {
+            System.out.printf("%-10s %12d %16d %14.1f%n", name, out.size(), allocated / iterations, elapsed / 1e3 / iterations);
+        }
+    }
+
+    private interface Response {
+        void write(OutputStream out) throws Exception;
+    }
+}
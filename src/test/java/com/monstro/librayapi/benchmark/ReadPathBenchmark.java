@@ -0,0 +1,104 @@
+package com.monstro.librayapi.benchmark;
+
+import com.monstro.librayapi.LibraryApiApplication;
+import com.monstro.librayapi.api.dto.BookDTO;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.service.BookService;
+import com.monstro.librayapi.service.projection.AuthorDictionary;
+import org.modelmapper.ModelMapper;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Allocation and time per {@code find} page on an in-memory H2 database: managed {@code Book} entities copied
+ * into {@code BookDTO}s with ModelMapper, against {@code BookSummary} projections selected by the query.
+ *
+ * Run from the test classpath, e.g.
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.monstro.librayapi.benchmark.ReadPathBenchmark}.
+ * System properties: benchmark.books (default 20000), benchmark.pageSize (default 1000),
+ * benchmark.iterations (default 200).
+ */
+public class ReadPathBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int books = Integer.getInteger("benchmark.books", 20000);
+        int pageSize = Integer.getInteger("benchmark.pageSize", 1000);
+        int iterations = Integer.getInteger("benchmark.iterations", 200);
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--logging.level.root=WARN", "--spring.jpa.show-sql=false")) {
+            BookRepository repository = context.getBean(BookRepository.class);
+            BookService bookService = context.getBean(BookService.class);
+            ModelMapper modelMapper = context.getBean(ModelMapper.class);
+            AuthorDictionary authors = context.getBean(AuthorDictionary.class);
+
+            List<Book> rows = new ArrayList<>(books);
+            for (int i = 0; i < books; i++) {
+                rows.add(Book.builder().title("Title " + i).authorId(authors.idOf("Author " + i % 50))
+                        .isbn(String.format("isbn-%08d", i)).build());
+            }
+            repository.saveAll(rows);
+
+            Book filter = Book.builder().author("author").build();
+            int pages = books / pageSize;
+
+            ReadPath entities = page -> bookService.find(filter, PageRequest.of(page, pageSize))
+                    .getContent()
+                    .stream()
+                    .map(entity -> modelMapper.map(entity, BookDTO.class))
+                    .collect(Collectors.toList());
+            ReadPath summaries = page -> {
+                Page<BookSummary> result = bookService.findSummaries(filter, PageRequest.of(page, pageSize));
+                return result.getContent()
+                        .stream()
+                        .map(summary -> BookDTO.builder()
+                                .id(Math.toIntExact(summary.getId()))
+                                .title(summary.getTitle())
+                                .author(summary.getAuthor())
+                                .isbn(summary.getIsbn())
+                                .build())
+                        .collect(Collectors.toList());
+            };
+
+            System.out.printf("%-10s %10s %16s %14s%n", "read path", "rows/op", "allocated/op", "micros/op");
+            for (int round = 0; round < 2; round++) {
+                boolean report = round == 1;
+                measure("entities", entities, pages, iterations, report);
+                measure("summaries", summaries, pages, iterations, report);
+            }
+        }
+    }
+
+    private static void measure(String name, ReadPath readPath, int pages, int iterations, boolean report) {
+        long thread = Thread.currentThread().getId();
+        long rows = 0;
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            rows += readPath.read(i % pages).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        if (report) {
+            System.out.printf("%-10s %10d %16d %14.1f%n", name, rows / iterations, allocated / iterations, elapsed / 1e3 / iterations);
+        }
+    }
+
+    private interface ReadPath {
+        List<BookDTO> read(int page);
+    }
+}
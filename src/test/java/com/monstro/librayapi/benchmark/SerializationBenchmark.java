@@ -0,0 +1,91 @@
+package com.monstro.librayapi.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.monstro.librayapi.api.dto.BookDTO;
+import com.monstro.librayapi.api.dto.LoanDTO;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload size and serialization throughput of book pages and loans in JSON, CBOR and Smile.
+ *
+ * Run from the test classpath, e.g.
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.monstro.librayapi.benchmark.SerializationBenchmark}.
+ * System properties: benchmark.pageSize (default 100), benchmark.seconds per measurement (default 3).
+ */
+public class SerializationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pageSize = Integer.getInteger("benchmark.pageSize", 100);
+        long seconds = Long.getLong("benchmark.seconds", 3);
+
+        Map<String, ObjectMapper> formats = new LinkedHashMap<>();
+        formats.put("json", new ObjectMapper());
+        formats.put("cbor", new ObjectMapper(new CBORFactory()));
+        formats.put("smile", new ObjectMapper(new SmileFactory()));
+
+        Map<String, Object> payloads = new LinkedHashMap<>();
+        payloads.put("book", book(1));
+        payloads.put("loan", LoanDTO.builder().isbn("9780306406157").customer("customer-1").build());
+        payloads.put("page[" + pageSize + "]", page(pageSize));
+
+        System.out.printf("%-12s %-6s %10s %14s %12s%n", "payload", "format", "bytes", "ops/s", "MB/s");
+        for (Map.Entry<String, Object> payload : payloads.entrySet()) {
+            for (Map.Entry<String, ObjectMapper> format : formats.entrySet()) {
+                ObjectMapper mapper = format.getValue();
+                int bytes = mapper.writeValueAsBytes(payload.getValue()).length;
+
+                measure(mapper, payload.getValue(), TimeUnit.SECONDS.toNanos(1));
+                double opsPerSecond = measure(mapper, payload.getValue(), TimeUnit.SECONDS.toNanos(seconds));
+
+                System.out.printf("%-12s %-6s %10d %14.0f %12.1f%n", payload.getKey(), format.getKey(), bytes,
+                        opsPerSecond, opsPerSecond * bytes / (1024 * 1024));
+            }
+        }
+    }
+
+    private static double measure(ObjectMapper mapper, Object value, long durationNanos) throws Exception {
+        long operations = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink += mapper.writeValueAsBytes(value).length;
+            }
+            operations += 100;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < durationNanos);
+
+        if (sink == 42) {
+            System.out.println();
+        }
+        return operations * 1e9 / elapsed;
+    }
+
+    private static Page<BookDTO> page(int size) {
+        List<BookDTO> content = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            content.add(book(i));
+        }
+        return new PageImpl<>(content, PageRequest.of(0, size), size * 10L);
+    }
+
+    private static BookDTO book(int id) {
+        return BookDTO.builder()
+                .id(id)
+                .title("The title of book number " + id)
+                .author("Author " + (id % 50))
+                .isbn(String.format("978%010d", id))
+                .build();
+    }
+}
@@ -0,0 +1,193 @@
+package com.monstro.librayapi.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures JVM start until the first successful {@code GET /api/book/{id}} and the heap reported at startup,
+ * with and without the {@code startup} profile.
+ *
+ * Build with {@code mvn -Pstartup package} and run this class from the test classpath, for example
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.monstro.librayapi.benchmark.StartupBenchmark}.
+ *
+ * System properties:
+ * benchmark.jar (default target/libray-api-0.0.1-SNAPSHOT.jar),
+ * benchmark.cds (default target/library-api.jsa, skipped when missing),
+ * benchmark.runs (default 5).
+ */
+public class StartupBenchmark {
+
+    private static final Pattern STARTUP_REPORT = Pattern.compile("Startup report: ready after (\\d+) ms, heap used (\\d+) bytes");
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(120);
+
+    public static void main(String[] args) throws Exception {
+        String jar = System.getProperty("benchmark.jar", "target/libray-api-0.0.1-SNAPSHOT.jar");
+        String cds = System.getProperty("benchmark.cds", "target/library-api.jsa");
+        int runs = Integer.getInteger("benchmark.runs", 5);
+
+        List<String> baseline = Arrays.asList("-Dspring.index.ignore=true");
+        List<String> optimized = new ArrayList<>();
+        if (new File(cds).exists()) {
+            optimized.add("-XX:SharedArchiveFile=" + cds);
+        } else {
+            System.out.println("No CDS archive at " + cds + ", measuring the startup profile without it");
+        }
+
+        System.out.printf("%-10s %4s %12s %12s %12s %14s%n", "variant", "run", "ready(ms)", "first(ms)", "success(ms)", "heap(bytes)");
+        for (int run = 1; run <= runs; run++) {
+            print("baseline", run, measure(jar, baseline, false));
+            print("startup", run, measure(jar, optimized, true));
+        }
+    }
+
+    private static void print(String variant, int run, Result result) {
+        System.out.printf("%-10s %4d %12d %12d %12d %14d%n", variant, run,
+                result.readyMillis, result.firstResponseMillis, result.firstSuccessMillis, result.heapUsed);
+    }
+
+    private static Result measure(String jar, List<String> jvmArgs, boolean startupProfile) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar);
+        command.add("--server.port=" + port);
+        if (startupProfile) {
+            command.add("--spring.profiles.active=startup");
+        }
+
+        Result result = new Result();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Thread reader = readStartupReport(process, result);
+        try {
+            String base = "http://localhost:" + port + "/api/book/";
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+            int status = -1;
+            while (status < 0) {
+                checkDeadline(deadline);
+                status = get(base + "1");
+            }
+            result.firstResponseMillis = elapsedMillis(start);
+
+            // the probe book is there (2xx) or not yet (404); anything else is a broken start, not a slow one
+            if (status == 404) {
+                long id = post(base, "{\"title\":\"startup\",\"author\":\"benchmark\",\"isbn\":\"9780306406157\"}");
+                do {
+                    checkDeadline(deadline);
+                    status = get(base + id);
+                } while (status < 0);
+            }
+            if (status / 100 != 2) {
+                throw new IllegalStateException("GET /api/book/{id} answered " + status + " at startup");
+            }
+            result.firstSuccessMillis = elapsedMillis(start);
+        } finally {
+            process.destroy();
+            process.waitFor(30, TimeUnit.SECONDS);
+            reader.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        return result;
+    }
+
+    private static Thread readStartupReport(Process process, Result result) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    Matcher matcher = STARTUP_REPORT.matcher(line);
+                    if (matcher.find()) {
+                        result.readyMillis = Long.parseLong(matcher.group(1));
+                        result.heapUsed = Long.parseLong(matcher.group(2));
+                    }
+                }
+            } catch (IOException ignored) {
+                // the process was destroyed
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
+    }
+
+    private static int get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(100);
+            connection.setRequestProperty("Accept", "application/json");
+            int status = connection.getResponseCode();
+            connection.disconnect();
+            return status;
+        } catch (IOException e) {
+            sleep();
+            return -1;
+        }
+    }
+
+    private static long post(String url, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Accept", "application/json");
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        if (connection.getResponseCode() != 201) {
+            throw new IllegalStateException("POST /api/book answered " + connection.getResponseCode() + " at startup");
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            Matcher matcher = Pattern.compile("\"id\"\\s*:\\s*(\\d+)").matcher(in.readLine());
+            if (!matcher.find()) {
+                throw new IllegalStateException("created book has no id");
+            }
+            return Long.parseLong(matcher.group(1));
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static void checkDeadline(long deadline) {
+        if (System.currentTimeMillis() > deadline) {
+            throw new IllegalStateException("application did not answer within " + TIMEOUT_MILLIS + " ms");
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Result {
+        volatile long readyMillis = -1;
+        volatile long heapUsed = -1;
+        long firstResponseMillis;
+        long firstSuccessMillis;
+    }
+}
@@ -0,0 +1,25 @@
+package com.monstro.librayapi.budget;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Fails the test when it runs more than {@link #max()} SQL statements, counted by the context's
+ * {@link StatementCounter}. Setup in {@code @BeforeEach} methods is not counted.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@ExtendWith(QueryBudgetExtension.class)
+public @interface QueryBudget {
+
+    /**
+     * The endpoint under test, for the failure message, e.g. {@code "GET /api/book/{id}"}.
+     */
+    String endpoint();
+
+    int max();
+}
@@ -0,0 +1,36 @@
+package com.monstro.librayapi.budget;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.List;
+
+public class QueryBudgetExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        counter(context).start();
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        List<String> statements = counter(context).stop();
+        QueryBudget budget = AnnotationSupport.findAnnotation(context.getRequiredTestMethod(), QueryBudget.class)
+                .orElseThrow(IllegalStateException::new);
+
+        if (statements.size() > budget.max()) {
+            StringBuilder message = new StringBuilder()
+                    .append(budget.endpoint()).append(" ran ").append(statements.size())
+                    .append(" statements, its budget is ").append(budget.max()).append(':');
+            statements.forEach(sql -> message.append(System.lineSeparator()).append("  ").append(sql));
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    private StatementCounter counter(ExtensionContext context) {
+        return SpringExtension.getApplicationContext(context).getBean(StatementCounter.class);
+    }
+}
@@ -0,0 +1,78 @@
+package com.monstro.librayapi.budget;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wraps every {@code DataSource} bean so the SQL statements executed between {@link #start()} and {@link #stop()}
+ * are recorded, on any thread: async requests run their queries on a bulkhead thread. Add it to a test context
+ * with {@code @Import(StatementCounter.class)} and declare budgets with {@link QueryBudget}.
+ */
+public class StatementCounter implements BeanPostProcessor {
+
+    private final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean counting;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource) {
+            return proxy(DataSource.class, bean, null);
+        }
+        return bean;
+    }
+
+    public void start() {
+        statements.clear();
+        counting = true;
+    }
+
+    /**
+     * @return the statements executed since {@link #start()}, in order
+     */
+    public List<String> stop() {
+        counting = false;
+        return new ArrayList<>(statements);
+    }
+
+    private void record(String sql) {
+        if (counting) {
+            statements.add(sql);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, Object target, String sql) {
+        InvocationHandler handler = (proxy, method, args) -> intercept(target, sql, method, args);
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private Object intercept(Object target, String sql, Method method, Object[] args) throws Throwable {
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        String name = method.getName();
+        if (target instanceof Statement && name.startsWith("execute")) {
+            record(sql != null ? sql : String.valueOf(args == null ? null : args[0]));
+        } else if (result instanceof Connection && name.equals("getConnection")) {
+            return proxy(Connection.class, result, null);
+        } else if (result instanceof Statement && target instanceof Connection) {
+            Class<?> type = method.getReturnType();
+            return proxy(type, result, args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+package com.monstro.librayapi.config.datasource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadWriteRoutingDataSourceTest {
+
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate readTransaction;
+    TransactionTemplate writeTransaction;
+    ReadYourWritesGuard guard;
+
+    @BeforeEach
+    public void setUp(){
+        createWith(Duration.ofSeconds(5));
+    }
+
+    private void createWith(Duration window) {
+        DataSource primary = createNode("primary");
+        DataSource replica = createNode("replica");
+
+        guard = new ReadYourWritesGuard(window, 100);
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, Collections.singletonList(replica), guard);
+        routing.afterPropertiesSet();
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    private DataSource createNode(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+
+        JdbcTemplate node = new JdbcTemplate(dataSource);
+        node.execute("create table node (name varchar(20))");
+        node.execute("create table note (text varchar(20))");
+        node.update("insert into node values (?)", name);
+        return dataSource;
+    }
+
+    private String currentNode(TransactionTemplate transaction) {
+        return transaction.execute(status -> jdbcTemplate.queryForObject("select name from node", String.class));
+    }
+
+    @Test
+    @DisplayName("Should send read only transactions to the replica")
+    public void readOnlyGoesToReplicaTest(){
+        assertThat(currentNode(readTransaction)).isEqualTo("replica");
+    }
+
+    @Test
+    @DisplayName("Should send write transactions to the primary")
+    public void writeGoesToPrimaryTest(){
+        assertThat(currentNode(writeTransaction)).isEqualTo("primary");
+    }
+
+    @Test
+    @DisplayName("Should read from the primary after the client own write")
+    public void readYourWritesTest(){
+        guard.setCurrentClient("writer");
+        writeTransaction.execute(status -> jdbcTemplate.update("insert into note values ('written')"));
+
+        assertThat(currentNode(readTransaction)).isEqualTo("primary");
+
+        guard.setCurrentClient("other");
+        assertThat(currentNode(readTransaction)).isEqualTo("replica");
+        guard.clearCurrentClient();
+    }
+
+    @Test
+    @DisplayName("Should go back to the replica when the read your writes window is over")
+    public void readYourWritesWindowExpiredTest() throws InterruptedException {
+        createWith(Duration.ofMillis(1));
+        guard.setCurrentClient("writer");
+        writeTransaction.execute(status -> jdbcTemplate.update("insert into note values ('written')"));
+
+        Thread.sleep(10);
+
+        assertThat(currentNode(readTransaction)).isEqualTo("replica");
+        guard.clearCurrentClient();
+    }
+}
@@ -0,0 +1,94 @@
+package com.monstro.librayapi.config.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestPhaseEventTest {
+
+    @AfterEach
+    public void tearDown(){
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @DisplayName("Should record the phase, endpoint and rows of the current request")
+    public void recordPhaseTest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/book/1");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/book/{id}");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        Path file = Files.createTempFile("request-phase", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(RequestPhaseEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.REPOSITORY);
+            event.end(Arrays.asList("a", "b", "c"));
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        assertThat(events).hasSize(1);
+        RecordedEvent recorded = events.get(0);
+        assertThat(recorded.getEventType().getName()).isEqualTo("com.monstro.librayapi.RequestPhase");
+        assertThat(recorded.getString("phase")).isEqualTo(RequestPhaseEvent.REPOSITORY);
+        assertThat(recorded.getString("endpoint")).isEqualTo("GET /api/book/{id}");
+        assertThat(recorded.getInt("rows")).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should record a phase off the request thread under the given endpoint")
+    public void recordEndpointTest() throws Exception {
+        Path file = Files.createTempFile("request-phase", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(RequestPhaseEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            RequestPhaseEvent event = RequestPhaseEvent.begin(RequestPhaseEvent.SERIALIZATION, "GET /api/loan/availability");
+            event.end(2);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getString("phase")).isEqualTo(RequestPhaseEvent.SERIALIZATION);
+        assertThat(events.get(0).getString("endpoint")).isEqualTo("GET /api/loan/availability");
+        assertThat(events.get(0).getInt("rows")).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should count the rows of a repository result")
+    public void rowsTest(){
+        assertThat(RequestPhaseEvent.rows(null)).isEqualTo(0);
+        assertThat(RequestPhaseEvent.rows(Optional.empty())).isEqualTo(0);
+        assertThat(RequestPhaseEvent.rows(Optional.of("book"))).isEqualTo(1);
+        assertThat(RequestPhaseEvent.rows(Boolean.FALSE)).isEqualTo(0);
+        assertThat(RequestPhaseEvent.rows(Arrays.asList(1, 2))).isEqualTo(2);
+        assertThat(RequestPhaseEvent.rows("book")).isEqualTo(1);
+    }
+}
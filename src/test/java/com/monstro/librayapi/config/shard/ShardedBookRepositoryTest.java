@@ -0,0 +1,176 @@
+package com.monstro.librayapi.config.shard;
+
+import com.monstro.librayapi.exception.BusinessException;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.entity.Loan;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "library.sharding.enabled=true",
+        "library.sharding.shards[0].url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+        "library.sharding.shards[1].url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+        "library.sharding.shards[2].url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.open-in-view=false"
+})
+public class ShardedBookRepositoryTest {
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    ShardRoutingDataSource shards;
+
+    @Autowired
+    ShardLayout layout;
+
+    @BeforeEach
+    public void setUp(){
+        for (int shard = 0; shard < layout.getShardCount(); shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shards.getShard(shard));
+            jdbcTemplate.execute("delete from loan");
+            jdbcTemplate.execute("delete from book");
+        }
+    }
+
+    private Book saveBook(int number) {
+        return bookRepository.save(Book.builder()
+                .isbn("isbn-" + number)
+                .title(String.format("title-%02d", number))
+                .author("author")
+                .build());
+    }
+
+    private int countOnShard(int shard, String isbn) {
+        return new JdbcTemplate(shards.getShard(shard)).queryForObject("select count(*) from book where isbn = ?", Integer.class, isbn);
+    }
+
+    @Test
+    @DisplayName("Should store each book only on the shard of its isbn")
+    public void saveOnIsbnShardTest(){
+        Set<Integer> usedShards = new HashSet<>();
+
+        for (int i = 0; i < 30; i++) {
+            Book book = saveBook(i);
+            int shard = layout.shardForIsbn(book.getIsbn());
+            usedShards.add(shard);
+
+            assertThat(layout.shardForId(book.getId())).isEqualTo(shard);
+            for (int other = 0; other < layout.getShardCount(); other++) {
+                assertThat(countOnShard(other, book.getIsbn())).isEqualTo(other == shard ? 1 : 0);
+            }
+        }
+
+        assertThat(usedShards).hasSize(layout.getShardCount());
+    }
+
+    @Test
+    @DisplayName("Should find a book by isbn and by id on its shard")
+    public void findOnSingleShardTest(){
+        Book book = saveBook(7);
+
+        assertThat(bookRepository.existsByIsbn("isbn-7")).isTrue();
+        assertThat(bookRepository.existsByIsbn("isbn-8")).isFalse();
+        assertThat(bookRepository.findByIsbn("isbn-7").map(Book::getId)).contains(book.getId());
+        assertThat(bookRepository.findById(book.getId()).map(Book::getIsbn)).contains("isbn-7");
+    }
+
+    @Test
+    @DisplayName("Should merge the sorted pages of all shards")
+    public void findScatterGatherTest(){
+        for (int i = 0; i < 20; i++) {
+            saveBook(i);
+        }
+
+        Page<Book> page = bookRepository.findAll(PageRequest.of(1, 5, Sort.by("title")));
+
+        assertThat(page.getTotalElements()).isEqualTo(20);
+        assertThat(page.getContent().stream().map(Book::getTitle).collect(Collectors.toList()))
+                .containsExactly("title-05", "title-06", "title-07", "title-08", "title-09");
+    }
+
+    @Test
+    @DisplayName("Should refuse a page beyond the rows every shard may read")
+    public void findTooDeepTest(){
+        saveBook(1);
+
+        assertThatThrownBy(() -> bookRepository.findAll(PageRequest.of(Integer.MAX_VALUE, 20)))
+                .isInstanceOf(BusinessException.class)
+                .hasMessage(ShardingRepositoryInvocationHandler.PAGE_TOO_DEEP);
+    }
+
+    @Test
+    @DisplayName("Should merge filtered pages in descending order")
+    public void findByExampleScatterGatherTest(){
+        for (int i = 0; i < 20; i++) {
+            saveBook(i);
+        }
+        Example<Book> example = Example.of(Book.builder().title("1").build(), ExampleMatcher
+                .matching()
+                .withIgnoreCase()
+                .withIgnoreNullValues()
+                .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+
+        Page<Book> page = bookRepository.findAll(example, PageRequest.of(0, 4, Sort.by(Sort.Direction.DESC, "title")));
+
+        assertThat(page.getTotalElements()).isEqualTo(11);
+        assertThat(page.getContent().stream().map(Book::getTitle).collect(Collectors.toList()))
+                .containsExactly("title-19", "title-18", "title-17", "title-16");
+    }
+
+    @Test
+    @DisplayName("Should keep a loaned book and its id when its isbn changes, refusing an isbn of another shard")
+    public void isbnChangeTest(){
+        Book book = saveBook(1);
+        int shard = layout.shardForId(book.getId());
+        Loan loan = loanRepository.save(Loan.builder().book(book).customer("customer").loanData(LocalDate.now()).build());
+        String sameShardIsbn = isbnOnShard(shard, true);
+        String otherShardIsbn = isbnOnShard(shard, false);
+
+        book.setIsbn(otherShardIsbn);
+        assertThatThrownBy(() -> bookRepository.save(book))
+                .isInstanceOf(BusinessException.class)
+                .hasMessage(ShardingRepositoryInvocationHandler.CROSS_SHARD_ISBN);
+        assertThat(bookRepository.findById(book.getId()).map(Book::getIsbn)).contains("isbn-1");
+
+        book.setIsbn(sameShardIsbn);
+        Book updated = bookRepository.save(book);
+        assertThat(updated.getId()).isEqualTo(book.getId());
+        assertThat(countOnShard(shard, sameShardIsbn)).isEqualTo(1);
+        assertThat(loanRepository.findById(loan.getId()).map(found -> found.getBook().getId())).contains(book.getId());
+    }
+
+    private String isbnOnShard(int shard, boolean same) {
+        for (int i = 100; ; i++) {
+            if ((layout.shardForIsbn("isbn-" + i) == shard) == same) {
+                return "isbn-" + i;
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.monstro.librayapi.config.shard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monstro.librayapi.api.dto.BookDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * ISBN changes through {@code PUT /api/book/{id}} on sharded storage. The ISBNs used are not valid ones, so
+ * duplicates are found by the ISBN-routed {@code existsByIsbn}, not by the in-memory ISBN index.
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "library.sharding.enabled=true",
+        "library.sharding.shards[0].url=jdbc:h2:mem:update-shard0;DB_CLOSE_DELAY=-1",
+        "library.sharding.shards[1].url=jdbc:h2:mem:update-shard1;DB_CLOSE_DELAY=-1",
+        "library.sharding.shards[2].url=jdbc:h2:mem:update-shard2;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.open-in-view=false"
+})
+@AutoConfigureMockMvc
+public class ShardedBookUpdateTest {
+
+    static String BOOK_API = "/api/book";
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    ShardRoutingDataSource shards;
+
+    @Autowired
+    ShardLayout layout;
+
+    @BeforeEach
+    public void setUp(){
+        for (int shard = 0; shard < layout.getShardCount(); shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shards.getShard(shard));
+            jdbcTemplate.execute("delete from loan");
+            jdbcTemplate.execute("delete from book");
+        }
+    }
+
+    @Test
+    @DisplayName("Should refuse a duplicate of an isbn set by an update")
+    public void duplicateAfterIsbnChangeTest() throws Exception {
+        create("isbn-1").andExpect(status().isCreated());
+        long id = idOf("isbn-1");
+        String sameShardIsbn = isbnOnShard(layout.shardForIsbn("isbn-1"), true);
+
+        update(id, sameShardIsbn).andExpect(status().isNoContent());
+
+        create(sameShardIsbn)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Isbn already register"));
+        assertThat(countOnShard(layout.shardForId(id), sameShardIsbn)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should refuse an isbn of another shard and keep the book where it is")
+    public void crossShardIsbnChangeTest() throws Exception {
+        create("isbn-1").andExpect(status().isCreated());
+        long id = idOf("isbn-1");
+        String otherShardIsbn = isbnOnShard(layout.shardForIsbn("isbn-1"), false);
+
+        update(id, otherShardIsbn)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value(ShardingRepositoryInvocationHandler.CROSS_SHARD_ISBN));
+
+        create("isbn-1").andExpect(status().isBadRequest());
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + id).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("isbn").value("isbn-1"));
+    }
+
+    private ResultActions create(String isbn) throws Exception {
+        return mvc.perform(MockMvcRequestBuilders.post(BOOK_API)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json(BookDTO.builder().title("title").author("author").isbn(isbn).build())));
+    }
+
+    private ResultActions update(long id, String isbn) throws Exception {
+        return mvc.perform(MockMvcRequestBuilders.put(BOOK_API + "/" + id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json(BookDTO.builder().title("changed").author("author").isbn(isbn).build())));
+    }
+
+    private long idOf(String isbn) {
+        return new JdbcTemplate(shards.getShard(layout.shardForIsbn(isbn)))
+                .queryForObject("select id from book where isbn = ?", Long.class, isbn);
+    }
+
+    private int countOnShard(int shard, String isbn) {
+        return new JdbcTemplate(shards.getShard(shard)).queryForObject("select count(*) from book where isbn = ?", Integer.class, isbn);
+    }
+
+    private String isbnOnShard(int shard, boolean same) {
+        for (int i = 100; ; i++) {
+            if ((layout.shardForIsbn("isbn-" + i) == shard) == same) {
+                return "isbn-" + i;
+            }
+        }
+    }
+
+    private String json(BookDTO dto) throws Exception {
+        return new ObjectMapper().writeValueAsString(dto);
+    }
+}
@@ -0,0 +1,123 @@
+package com.monstro.librayapi.config.shard;
+
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.entity.Loan;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import com.monstro.librayapi.service.LoanBatchAction;
+import com.monstro.librayapi.service.LoanBatchItem;
+import com.monstro.librayapi.service.LoanService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent batch returns of the same loans, spread over two shards: each loan has to be reported returned by
+ * exactly one of them, which only holds when the loans stay locked until they are updated.
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "library.sharding.enabled=true",
+        "library.sharding.shards[0].url=jdbc:h2:mem:batch-shard0;DB_CLOSE_DELAY=-1",
+        "library.sharding.shards[1].url=jdbc:h2:mem:batch-shard1;DB_CLOSE_DELAY=-1",
+        "library.sharding.shards[2].url=jdbc:h2:mem:batch-shard2;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.open-in-view=false"
+})
+public class ShardedLoanBatchTest {
+
+    static final int ROUNDS = 20;
+    static final int THREADS = 4;
+
+    @Autowired
+    LoanService loanService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    ShardRoutingDataSource shards;
+
+    @Autowired
+    ShardLayout layout;
+
+    @BeforeEach
+    public void setUp(){
+        for (int shard = 0; shard < layout.getShardCount(); shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shards.getShard(shard));
+            jdbcTemplate.execute("delete from loan");
+            jdbcTemplate.execute("delete from book");
+        }
+    }
+
+    @Test
+    @DisplayName("Should report each loan returned by one of the concurrent batches only")
+    public void concurrentReturnTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                List<Long> loanIds = Arrays.asList(loan(round, 0), loan(round, 1));
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<List<LoanBatchItem>>> batches = new ArrayList<>();
+                for (int thread = 0; thread < THREADS; thread++) {
+                    batches.add(executor.submit(() -> {
+                        start.await();
+                        return loanService.applyBatch(LoanBatchAction.RETURN, loanIds, null);
+                    }));
+                }
+                start.countDown();
+
+                List<LoanBatchItem> items = new ArrayList<>();
+                for (Future<List<LoanBatchItem>> batch : batches) {
+                    items.addAll(batch.get(30, TimeUnit.SECONDS));
+                }
+                for (Long loanId : loanIds) {
+                    assertThat(items).filteredOn(item -> loanId.equals(item.getLoanId()))
+                            .extracting(LoanBatchItem::getOutcome)
+                            .as("outcomes of loan %d", loanId)
+                            .containsOnlyOnce(LoanBatchItem.Outcome.RETURNED)
+                            .hasSize(THREADS);
+                    assertThat(loanRepository.findById(loanId).map(Loan::getReturned)).contains(true);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long loan(int round, int shard) {
+        String isbn = isbnOnShard(shard, round);
+        Book book = bookRepository.save(Book.builder().isbn(isbn).title("title").author("author").build());
+        return loanRepository.save(Loan.builder().book(book).customer("customer").loanData(LocalDate.now()).build()).getId();
+    }
+
+    private String isbnOnShard(int shard, int round) {
+        for (int i = 0; ; i++) {
+            String isbn = "isbn-" + round + "-" + i;
+            if (layout.shardForIsbn(isbn) == shard) {
+                return isbn;
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.monstro.librayapi.model.respository;
 
+import com.monstro.librayapi.model.entity.Author;
 import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
 import com.monstro.librayapi.model.repository.BookRepository;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -8,9 +10,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.Arrays;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -101,4 +107,37 @@ public class BookRepositoryTest {
         assertThat(deletedBook).isNull();
     }
 
+    @Test
+    @DisplayName("Should return book summary by id")
+    public void findSummaryByIdTest(){
+        Author author = entityManager.persist(Author.builder().name("cest").build());
+        Book book = CreateNewBook("123");
+        book.setAuthorId(author.getId());
+        entityManager.persist(book);
+
+        Optional<BookSummary> summary = bookRepository.findSummaryById(book.getId());
+
+        assertThat(summary).contains(new BookSummary(book.getId(), "test", author.getId(), "123"));
+    }
+
+    @Test
+    @DisplayName("Should filter book summaries ignoring case and null filters")
+    public void findSummariesTest(){
+        Author artur = entityManager.persist(Author.builder().name("Artur").build());
+        Author lowerCaseArtur = entityManager.persist(Author.builder().name("artur").build());
+        Author cest = entityManager.persist(Author.builder().name("cest").build());
+        entityManager.persist(Book.builder().isbn("1").authorId(artur.getId()).title("Java").build());
+        entityManager.persist(Book.builder().isbn("2").authorId(lowerCaseArtur.getId()).title("Kotlin").build());
+        entityManager.persist(Book.builder().isbn("3").authorId(cest.getId()).title("java 100%").build());
+
+        Page<BookSummary> byAuthor = bookRepository.findSummariesByAuthorIds(null, Arrays.asList(artur.getId(), lowerCaseArtur.getId()),
+                null, PageRequest.of(0, 10, Sort.by("title")));
+        Page<BookSummary> byPercent = bookRepository.findSummaries("%\\%%", null, PageRequest.of(0, 10));
+
+        assertThat(byAuthor.getTotalElements()).isEqualTo(2);
+        assertThat(byAuthor.getContent()).extracting(BookSummary::getTitle).containsExactly("Java", "Kotlin");
+        assertThat(byPercent.getContent()).extracting(BookSummary::getIsbn).containsExactly("3");
+        assertThat(byPercent.getContent()).extracting(BookSummary::getAuthorId).containsExactly(cest.getId());
+    }
+
 }
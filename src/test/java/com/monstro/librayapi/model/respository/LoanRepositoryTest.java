@@ -0,0 +1,125 @@
+package com.monstro.librayapi.model.respository;
+
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.entity.Loan;
+import com.monstro.librayapi.model.projection.LoanIsbn;
+import com.monstro.librayapi.model.projection.LoanState;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.PersistenceException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class LoanRepositoryTest {
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    private Loan createLoan(Book book, Boolean returned) {
+        Loan loan = Loan.builder().book(book).customer("fulano").loanData(LocalDate.now().minusDays(10)).returned(returned).build();
+        return entityManager.persist(loan);
+    }
+
+    private Book createBook(String isbn) {
+        return entityManager.persist(Book.builder().isbn(isbn).author("cest").title("test").build());
+    }
+
+    @Test
+    @DisplayName("Should lock and read the state of loans by id")
+    public void lockStatesTest(){
+        Book book = createBook("123");
+        Loan open = createLoan(book, null);
+        Loan returned = createLoan(book, true);
+
+        List<LoanIsbn> states = loanRepository.lockStates(Arrays.asList(open.getId(), returned.getId(), 999L));
+
+        assertThat(states).hasSize(2).extracting(LoanIsbn::getIsbn).containsOnly("123");
+        assertThat(states).filteredOn(LoanState::isOpen).extracting(LoanState::getId).containsExactly(open.getId());
+    }
+
+    @Test
+    @DisplayName("Should only return and renew open loans")
+    public void conditionalUpdatesTest(){
+        Book book = createBook("123");
+        Loan open = createLoan(book, false);
+        Loan returned = createLoan(book, true);
+        List<Long> ids = Arrays.asList(open.getId(), returned.getId());
+
+        int renewed = loanRepository.renew(ids, LocalDate.now());
+        int markedReturned = loanRepository.markReturned(ids);
+        entityManager.clear();
+
+        assertThat(renewed).isEqualTo(1);
+        assertThat(markedReturned).isEqualTo(1);
+        assertThat(entityManager.find(Loan.class, open.getId()).getReturned()).isTrue();
+        assertThat(entityManager.find(Loan.class, open.getId()).getLoanData()).isEqualTo(LocalDate.now());
+        assertThat(entityManager.find(Loan.class, returned.getId()).getLoanData()).isEqualTo(LocalDate.now().minusDays(10));
+    }
+
+    @Test
+    @DisplayName("Should return the open loans it locked and report the states they had")
+    public void lockAndReturnTest(){
+        Book book = createBook("123");
+        Loan open = createLoan(book, null);
+        Loan returned = createLoan(book, true);
+
+        List<LoanIsbn> states = loanRepository.lockAndReturn(Arrays.asList(open.getId(), returned.getId()));
+        entityManager.clear();
+
+        assertThat(states).filteredOn(LoanState::isOpen).extracting(LoanState::getId).containsExactly(open.getId());
+        assertThat(entityManager.find(Loan.class, open.getId()).getReturned()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should allow one open loan per book and list the loaned books")
+    public void openLoanPerBookTest(){
+        Book book = createBook("123");
+        Book other = createBook("456");
+        createLoan(book, true);
+        createLoan(book, null);
+        createLoan(other, false);
+
+        assertThat(loanRepository.findOpenLoanBookIds(0L, PageRequest.of(0, 10))).containsExactly(book.getId(), other.getId());
+        assertThat(loanRepository.findOpenLoanBookIds(book.getId(), PageRequest.of(0, 10))).containsExactly(other.getId());
+
+        Throwable exception = Assertions.catchThrowable(() -> createLoan(book, false));
+
+        assertThat(exception).isInstanceOf(PersistenceException.class);
+    }
+
+    @Test
+    @DisplayName("Should find loans by the isbn of their book")
+    public void findByBookIsbnTest(){
+        Book book = createBook("978-0-306-40615-7");
+        Book freeForm = createBook("123");
+        Loan loan = createLoan(book, null);
+        Loan freeFormLoan = createLoan(freeForm, null);
+
+        List<LoanIsbn> byKey = loanRepository.findByBookIsbnKeys(Collections.singletonList(9780306406157L));
+        List<LoanIsbn> byIsbn = loanRepository.findByBookIsbns(Collections.singletonList("123"));
+
+        assertThat(byKey).extracting(LoanIsbn::getId).containsExactly(loan.getId());
+        assertThat(byKey.get(0).getIsbnKey()).isEqualTo(9780306406157L);
+        assertThat(byIsbn).extracting(LoanIsbn::getId).containsExactly(freeFormLoan.getId());
+    }
+}
@@ -0,0 +1,147 @@
+package com.monstro.librayapi.model.respository;
+
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs each repository query, captures the SQL Hibernate sends and checks H2's {@code EXPLAIN} of it: a query
+ * that starts scanning the whole table, because an index was dropped or the query no longer fits it, fails here.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.monstro.librayapi.model.respository.QueryPlanTest$CapturingInspector")
+public class QueryPlanTest {
+
+    private static final String TABLE_SCAN = "tableScan";
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp(){
+        jdbcTemplate.update("insert into author (id, name) select x, 'Author ' || x from system_range(1, 50)");
+        jdbcTemplate.update("insert into book (author_id, title, isbn) select x % 50 + 1, 'Title ' || x, 'isbn-' || x"
+                + " from system_range(1, 2000)");
+        jdbcTemplate.update("insert into loan (customer, loan_data, returned, book_id) select 'Customer ' || (id % 100),"
+                + " current_date, id % 3 = 0, id from book");
+        CapturingInspector.clear();
+    }
+
+    @Test
+    @DisplayName("Should look books up by isbn through the unique isbn index")
+    public void isbnQueriesUseIndexTest(){
+        assertThat(planOf(() -> bookRepository.existsByIsbn("isbn-10"))).contains("UX_BOOK_ISBN:");
+        assertThat(planOf(() -> bookRepository.findByIsbn("isbn-10"))).contains("UX_BOOK_ISBN:");
+        assertThat(planOf(() -> bookRepository.findByIsbnKey(9780306406157L))).contains("UX_BOOK_ISBN_KEY:");
+    }
+
+    @Test
+    @DisplayName("Should read books by id through the primary key")
+    public void idQueriesUsePrimaryKeyTest(){
+        assertThat(planOf(() -> bookRepository.findById(10L))).contains("PRIMARY_KEY");
+        assertThat(planOf(() -> bookRepository.findSummaryById(10L))).contains("PRIMARY_KEY");
+        assertThat(planOf(() -> bookRepository.findTop1000ByIdGreaterThanOrderByIdAsc(10L))).contains("PRIMARY_KEY");
+        planOf(() -> bookRepository.findTop1000ByIsbnKeyNotNullAndIdGreaterThanOrderByIdAsc(10L));
+    }
+
+    /**
+     * A {@code like '%...%'} filter cannot seek in any index, so only the page query is checked: in id order it
+     * walks the primary key and stops once the page is full. The count query visits every candidate row.
+     */
+    @Test
+    @DisplayName("Should read summary pages in index order")
+    public void summaryPagesUseIndexOrderTest(){
+        assertThat(planOf(() -> bookRepository.findSummaries("%title 1%", null, PageRequest.of(0, 10, Sort.by("id")))))
+                .contains("PRIMARY_KEY")
+                .contains("index sorted");
+        assertThat(planOf(() -> bookRepository.findSummaries(null, null, PageRequest.of(0, 10, Sort.by("titleLower")))))
+                .contains("IX_BOOK_TITLE_LOWER")
+                .contains("index sorted");
+    }
+
+    /**
+     * The author filter arrives as the ids of the matching authors, an integer {@code in} on the author id index.
+     */
+    @Test
+    @DisplayName("Should filter books by author through the author id index")
+    public void authorFilterUsesIndexTest(){
+        assertThat(planOf(() -> bookRepository.findSummariesByAuthorIds(null, Arrays.asList(1, 2), null,
+                PageRequest.of(0, 10, Sort.by("titleLower")))))
+                .contains("IX_BOOK_AUTHOR_ID");
+    }
+
+    @Test
+    @DisplayName("Should find the loans of books and lock loans through indexes")
+    public void loanQueriesUseIndexTest(){
+        assertThat(planOf(() -> loanRepository.findByBookIsbns(Arrays.asList("isbn-1", "isbn-2")))).contains("UX_BOOK_ISBN:");
+        assertThat(planOf(() -> loanRepository.findByBookIsbnKeys(Collections.singletonList(9780306406157L))))
+                .contains("UX_BOOK_ISBN_KEY:");
+        assertThat(planOf(() -> loanRepository.lockStates(Arrays.asList(1L, 2L)))).contains("PRIMARY_KEY");
+        // an index on book_id, whichever H2 picks
+        assertThat(planOf(() -> loanRepository.existsOpenLoan(1L))).contains(": BOOK_ID = ?1 */");
+    }
+
+    /**
+     * Plan of the first statement the call sends; it fails when the call sends none.
+     */
+    private String planOf(Runnable call) {
+        entityManager.clear();
+        CapturingInspector.clear();
+        call.run();
+
+        List<String> statements = CapturingInspector.statements();
+        assertThat(statements).isNotEmpty();
+        String plan = jdbcTemplate.queryForObject("explain " + statements.get(0), String.class);
+        assertThat(plan).doesNotContain(TABLE_SCAN);
+        return plan;
+    }
+
+    public static class CapturingInspector implements StatementInspector {
+
+        private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+        static void clear() {
+            STATEMENTS.clear();
+        }
+
+        static List<String> statements() {
+            return new ArrayList<>(STATEMENTS);
+        }
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -1,24 +1,39 @@
 package com.monstro.librayapi.service;
 
 import com.monstro.librayapi.exception.BusinessException;
+import com.monstro.librayapi.model.entity.Author;
 import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookSummary;
+import com.monstro.librayapi.model.repository.AuthorRepository;
 import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import com.monstro.librayapi.service.cache.BookReadCache;
+import com.monstro.librayapi.service.projection.AuthorDictionary;
+import com.monstro.librayapi.service.projection.BookCatalogProjection;
+import com.monstro.librayapi.service.projection.IsbnIndex;
+import com.monstro.librayapi.service.projection.LoanedBooks;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.Example;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -31,9 +46,34 @@ public class BookServiceTest {
     @MockBean
     private BookRepository repository;
 
+    private ApplicationEventPublisher eventPublisher;
+
+    private IsbnIndex isbnIndex;
+
+    private BookCatalogProjection catalogProjection;
+
+    private LoanedBooks loanedBooks;
+
+    private AuthorRepository authorRepository;
+
+    private AuthorDictionary authors;
+
     @BeforeEach
     public void setUp(){
-        this.bookService = new BookServiceImpl(repository);
+        AtomicInteger authorIds = new AtomicInteger();
+        this.authorRepository = Mockito.mock(AuthorRepository.class);
+        Mockito.when(authorRepository.save(Mockito.any(Author.class))).thenAnswer(invocation -> {
+            Author author = invocation.getArgument(0);
+            author.setId(authorIds.incrementAndGet());
+            return author;
+        });
+        this.authors = new AuthorDictionary(authorRepository, Mockito.mock(PlatformTransactionManager.class), Duration.ofMinutes(1));
+        this.eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        this.isbnIndex = new IsbnIndex(repository);
+        this.catalogProjection = Mockito.mock(BookCatalogProjection.class);
+        this.loanedBooks = new LoanedBooks(Mockito.mock(LoanRepository.class));
+        this.bookService = new BookServiceImpl(repository, eventPublisher, isbnIndex, new BookReadCache(false, Duration.ZERO, 0),
+                catalogProjection, loanedBooks, authors);
     }
 
     @Test
@@ -52,6 +92,8 @@ public class BookServiceTest {
         assertThat(savedBook.getIsbn()).isEqualTo(book.getIsbn());
         assertThat(savedBook.getTitle()).isEqualTo(book.getTitle());
         assertThat(savedBook.getAuthor()).isEqualTo(book.getAuthor());
+        assertThat(book.getAuthorId()).isEqualTo(authors.idOf("cest"));
+        Mockito.verify(eventPublisher, Mockito.times(1)).publishEvent(Mockito.any(BookChangedEvent.class));
     }
 
     private Book createValidBook(Book.BookBuilder builder) {
@@ -73,6 +115,7 @@ public class BookServiceTest {
                 .hasMessage("Isbn already register");
 
         Mockito.verify(repository, Mockito.never()).save(book);
+        Mockito.verify(eventPublisher, Mockito.never()).publishEvent(Mockito.any(BookChangedEvent.class));
     }
 
 
@@ -81,7 +124,9 @@ public class BookServiceTest {
     public void getByIdTest(){
         int id = 11;
         Book book = createValidBook(Book.builder().id((long) id));
-        Mockito.when(repository.findById(id)).thenReturn(Optional.of(book));
+        Book stored = Book.builder().id((long) id).isbn(book.getIsbn()).title(book.getTitle())
+                .authorId(authors.idOf(book.getAuthor())).build();
+        Mockito.when(repository.findById((long) id)).thenReturn(Optional.of(stored));
 
         Optional<Book> foundBook = bookService.getById((long) id);
 
@@ -126,11 +171,11 @@ public class BookServiceTest {
     @DisplayName("Should update book by id")
     public void updateByIdTest(){
         int id = 11;
-        Book updatingBook = createValidBook(Book.builder().id((long) id));
+        Book updatingBook = createValidBook(Book.builder().id((long) id).authorId(authors.idOf("cest")));
 
         Book updateBook  = createValidBook(Book.builder().id((long) id));
         updateBook.setTitle("test");
-        Mockito.when(repository.save(updatingBook)).thenReturn(updateBook);
+        Mockito.when(repository.saveAndFlush(updatingBook)).thenReturn(updateBook);
 
         Book book = bookService.update(updateBook);
 
@@ -145,9 +190,53 @@ public class BookServiceTest {
     public void updateByIdErrorTest(){
         int id = 11;
         Book book = createValidBook(Book.builder().id((long) id));
+        Mockito.when(repository.saveAndFlush(book)).thenReturn(book);
         org.junit.jupiter.api.Assertions.assertDoesNotThrow(()-> bookService.update(book));
 
-        Mockito.verify(repository, Mockito.times(1)).save(book);
+        Mockito.verify(repository, Mockito.times(1)).saveAndFlush(book);
+    }
+
+    @Test
+    @DisplayName("Should delete book by id with a single statement")
+    public void deleteByIdWithoutLoadingTest(){
+        Mockito.when(repository.deleteBookById(11L)).thenReturn(1);
+        Mockito.when(repository.deleteBookById(12L)).thenReturn(0);
+
+        assertThat(bookService.deleteById(11L)).isTrue();
+        assertThat(bookService.deleteById(12L)).isFalse();
+
+        Mockito.verify(repository, Mockito.never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Should update the loaded book and flush it without a merge")
+    public void updateByIdWithoutMergeTest(){
+        Book stored = createValidBook(Book.builder().id((long) 11));
+        Mockito.when(repository.findById(11L)).thenReturn(Optional.of(stored));
+        Book changes = Book.builder().title("new title").author("new author").isbn(stored.getIsbn()).build();
+
+        Optional<Book> updated = bookService.updateById(11L, changes);
+
+        assertThat(updated).containsSame(stored);
+        assertThat(stored.getTitle()).isEqualTo("new title");
+        assertThat(stored.getAuthor()).isEqualTo("new author");
+        assertThat(stored.getAuthorId()).isEqualTo(authors.idOf("new author"));
+        Mockito.verify(repository, Mockito.never()).save(Mockito.any(Book.class));
+        Mockito.verify(repository, Mockito.times(1)).saveAndFlush(stored);
+    }
+
+    @Test
+    @DisplayName("Should pass an isbn change of the loaded book through the repository")
+    public void updateByIdIsbnChangeTest(){
+        Book stored = createValidBook(Book.builder().id((long) 11));
+        Mockito.when(repository.findById(11L)).thenReturn(Optional.of(stored));
+        Book changes = Book.builder().title("new title").author("new author").isbn("978-0-306-40615-7").build();
+
+        Optional<Book> updated = bookService.updateById(11L, changes);
+
+        assertThat(updated).containsSame(stored);
+        assertThat(stored.getIsbnKey()).isEqualTo(9780306406157L);
+        Mockito.verify(repository, Mockito.times(1)).saveAndFlush(stored);
     }
 
 
@@ -156,19 +245,184 @@ public class BookServiceTest {
     public void findBookTest(){
 
         Book book = createValidBook(Book.builder());
+        authors.idOf(book.getAuthor());
 
         PageRequest pageRequest = PageRequest.of(0, 10);
 
         Page<Book> page = new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), 1);
-        Mockito.when(repository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
+        Mockito.when(repository.findAll(Mockito.<Specification<Book>>any(), Mockito.any(PageRequest.class)))
                 .thenReturn(page);
 
         Page<Book> books = bookService.find(book, pageRequest);
 
         assertThat(books.getTotalElements()).isEqualTo(1);
-        assertThat(books.getContent()).isEqualTo(books);
+        assertThat(books.getContent()).isEqualTo(page.getContent());
         assertThat(books.getPageable().getPageNumber()).isEqualTo(0);
         assertThat(books.getPageable().getPageSize()).isEqualTo(10);
     }
 
+    @Test
+    @DisplayName("Should return book by isbn")
+    public void getByIsbnTest(){
+        String isbn = "11234";
+        Mockito.when(repository.findByIsbn(isbn)).thenReturn(Optional.of(createValidBook(Book.builder().id((long) 11))));
+
+        Optional<Book> foundBook = bookService.getByIsbn(isbn);
+
+        assertThat(foundBook.isPresent()).isTrue();
+        assertThat(foundBook.get().getIsbn()).isEqualTo(isbn);
+        Mockito.verify(repository, Mockito.times(1)).findByIsbn(isbn);
+    }
+
+    @Test
+    @DisplayName("Should throw error in add book with isbn already indexed in another form")
+    public void saveBookIndexedIsbnExceptionTest(){
+        Book registered = Book.builder().id((long) 11).isbn("978-0-306-40615-7").author("cest").title("test").build();
+        isbnIndex.onBookChanged(new BookChangedEvent(BookChangedEvent.Change.CREATED, registered.getId(), registered));
+        Book book = Book.builder().isbn("0306406152").author("cest").title("test").build();
+
+        Throwable exception = Assertions.catchThrowable(() -> bookService.save(book));
+
+        assertThat(exception)
+                .isInstanceOf(BusinessException.class)
+                .hasMessage("Isbn already register");
+        Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+        Mockito.verify(repository, Mockito.never()).save(book);
+    }
+
+    @Test
+    @DisplayName("Should save book with its isbn-13 key without querying the isbn")
+    public void saveBookWithIsbnKeyTest(){
+        Book book = Book.builder().isbn("0-306-40615-2").author("cest").title("test").build();
+        Mockito.when(repository.save(book)).thenReturn(book);
+
+        Book savedBook = bookService.save(book);
+
+        assertThat(savedBook.getIsbnKey()).isEqualTo(9780306406157L);
+        Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("Should return book by isbn through the isbn index")
+    public void getByIndexedIsbnTest(){
+        Book book = Book.builder().id((long) 11).isbn("9780306406157").author("cest").title("test").build();
+        isbnIndex.onBookChanged(new BookChangedEvent(BookChangedEvent.Change.CREATED, book.getId(), book));
+        Mockito.when(repository.findById((long) 11)).thenReturn(Optional.of(book));
+
+        Optional<Book> foundBook = bookService.getByIsbn("0-306-40615-2");
+
+        assertThat(foundBook).contains(book);
+        Mockito.verify(repository, Mockito.never()).findByIsbn(Mockito.anyString());
+        Mockito.verify(repository, Mockito.never()).findByIsbnKey(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Should look up the isbn key when the isbn is not indexed")
+    public void getByNotIndexedIsbnTest(){
+        Mockito.when(repository.findByIsbnKey(9780306406157L)).thenReturn(Optional.empty());
+
+        Optional<Book> foundBook = bookService.getByIsbn("978-0-306-40615-7");
+
+        assertThat(foundBook.isPresent()).isFalse();
+        Mockito.verify(repository, Mockito.times(1)).findByIsbnKey(9780306406157L);
+    }
+
+    @Test
+    @DisplayName("Should refuse an author filter that matches too many authors")
+    public void findTooManyAuthorsTest(){
+        for (int i = 0; i <= BookServiceImpl.MAX_AUTHOR_IDS; i++) {
+            authors.idOf("Author " + i);
+        }
+        Book filter = Book.builder().author("author").build();
+
+        Throwable exception = Assertions.catchThrowable(() -> bookService.find(filter, PageRequest.of(0, 10)));
+
+        assertThat(exception).isInstanceOf(BusinessException.class)
+                .hasMessage("Author filter matches more than " + BookServiceImpl.MAX_AUTHOR_IDS + " authors");
+        Mockito.verify(repository, Mockito.never()).findAll(Mockito.<Specification<Book>>any(), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Should find summaries with escaped lower-case patterns")
+    public void findSummariesTest(){
+        Book filter = Book.builder().title("Java_100%").build();
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Page<BookSummary> page = new PageImpl<>(Arrays.asList(new BookSummary((long) 11, "Java_100%", 1, "123")), pageRequest, 1);
+        Mockito.when(repository.findSummaries("%java\\_100\\%%", null, PageRequest.of(0, 10, Sort.by("id")))).thenReturn(page);
+
+        Page<BookSummary> summaries = bookService.findSummaries(filter, pageRequest);
+
+        assertThat(summaries.getTotalElements()).isEqualTo(1);
+        Mockito.verify(repository, Mockito.never()).findAll(Mockito.<Specification<Book>>any(), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Should filter summaries by the ids of the matching authors and add their names")
+    public void findSummariesByAuthorTest(){
+        int artur = authors.idOf("Artur");
+        int arturo = authors.idOf("arturo");
+        authors.idOf("cest");
+        PageRequest pageRequest = PageRequest.of(0, 10, Sort.by("id"));
+        Page<BookSummary> page = new PageImpl<>(Arrays.asList(new BookSummary(11L, "Java", artur, "123"),
+                new BookSummary(12L, "Kotlin", arturo, "124")), pageRequest, 2);
+        Mockito.when(repository.findSummariesByAuthorIds(null, Arrays.asList(artur, arturo), null, pageRequest)).thenReturn(page);
+
+        Page<BookSummary> summaries = bookService.findSummaries(Book.builder().author("ARTUR").build(), pageRequest);
+
+        assertThat(summaries.getContent()).extracting(BookSummary::getAuthor).containsExactly("Artur", "arturo");
+        assertThat(summaries.getContent().get(0).getAuthor()).isSameAs(authors.nameOf(artur));
+    }
+
+    @Test
+    @DisplayName("Should answer an author filter no author matches without a query")
+    public void findSummariesUnknownAuthorTest(){
+        authors.idOf("cest");
+
+        Page<BookSummary> summaries = bookService.findSummaries(Book.builder().author("nobody").build(), PageRequest.of(0, 10));
+
+        assertThat(summaries.getTotalElements()).isZero();
+        Mockito.verifyNoInteractions(repository);
+    }
+
+    @Test
+    @DisplayName("Should sort summaries by author on the author id, then by id")
+    public void findSummariesAuthorSortTest(){
+        int cest = authors.idOf("cest");
+        PageRequest byAuthorId = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("authorId"), Sort.Order.asc("id")));
+        Mockito.when(repository.findSummaries(null, null, byAuthorId)).thenReturn(new PageImpl<>(
+                Arrays.asList(new BookSummary(11L, "Java", cest, "123")), byAuthorId, 1));
+
+        Page<BookSummary> summaries = bookService.findSummaries(new Book(),
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "author")));
+
+        assertThat(summaries.getContent()).extracting(BookSummary::getAuthor).containsExactly("cest");
+    }
+
+    @Test
+    @DisplayName("Should page the matching books that are not loaned reading only the page's rows")
+    public void findAvailableSummariesTest(){
+        Book filter = Book.builder().author("cest").build();
+        Mockito.when(catalogProjection.matchingIds(filter)).thenReturn(RoaringBitmap.bitmapOf(1, 2, 3, 4, 5, 6));
+        loanedBooks.tryCheckout(2L);
+        loanedBooks.tryCheckout(4L);
+        int cest = authors.idOf("cest");
+        Mockito.when(repository.findSummariesByIds(Arrays.asList(5L, 6L))).thenReturn(Arrays.asList(
+                new BookSummary(6L, "six", cest, "6"), new BookSummary(5L, "five", cest, "5")));
+
+        Page<BookSummary> page = bookService.findAvailableSummaries(filter, PageRequest.of(1, 2));
+
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertThat(page.getContent()).extracting(BookSummary::getId).containsExactly(5L, 6L);
+        assertThat(page.getContent()).extracting(BookSummary::getAuthor).containsExactly("cest", "cest");
+    }
+
+    @Test
+    @DisplayName("Should refuse to sort available books other than by id")
+    public void findAvailableSummariesSortTest(){
+        Throwable exception = Assertions.catchThrowable(() ->
+                bookService.findAvailableSummaries(new Book(), PageRequest.of(0, 2, Sort.by("title"))));
+
+        assertThat(exception).isInstanceOf(BusinessException.class);
+    }
+
 }
@@ -0,0 +1,204 @@
+package com.monstro.librayapi.service;
+
+import com.monstro.librayapi.exception.BusinessException;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.entity.Loan;
+import com.monstro.librayapi.model.projection.LoanIsbn;
+import com.monstro.librayapi.model.repository.LoanRepository;
+import com.monstro.librayapi.service.projection.LoanedBooks;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class LoanServiceTest {
+
+    LoanService loanService;
+
+    @MockBean
+    private LoanRepository repository;
+
+    ApplicationEventPublisher eventPublisher;
+    LoanedBooks loanedBooks;
+
+    @BeforeEach
+    public void setUp(){
+        this.eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        this.loanedBooks = new LoanedBooks(repository);
+        this.loanService = new LoanServiceImpl(repository, eventPublisher, loanedBooks);
+    }
+
+    private static LoanIsbn loan(long id, Boolean returned, String isbn, Long isbnKey) {
+        LoanIsbn loan = Mockito.mock(LoanIsbn.class);
+        Mockito.when(loan.getId()).thenReturn(id);
+        Mockito.when(loan.getBookId()).thenReturn(100 + id);
+        Mockito.when(loan.getReturned()).thenReturn(returned);
+        Mockito.when(loan.isOpen()).thenReturn(!Boolean.TRUE.equals(returned));
+        Mockito.when(loan.getIsbn()).thenReturn(isbn);
+        Mockito.when(loan.getIsbnKey()).thenReturn(isbnKey);
+        return loan;
+    }
+
+    @Test
+    @DisplayName("Should return open loans by id and isbn and report every item")
+    public void returnBatchTest(){
+        LoanIsbn open = loan(1, null, "978-0-306-40615-7", 9780306406157L);
+        LoanIsbn returned = loan(2, true, "978-0-306-40615-7", 9780306406157L);
+        LoanIsbn closed = loan(3, true, "123", null);
+        Mockito.when(repository.findByBookIsbnKeys(Collections.singletonList(9780306406157L))).thenReturn(Arrays.asList(open, returned));
+        Mockito.when(repository.findByBookIsbns(Arrays.asList("123", "404"))).thenReturn(Collections.singletonList(closed));
+        Mockito.when(repository.lockAndReturn(Arrays.asList(2L, 5L, 1L))).thenReturn(Arrays.asList(returned, open));
+
+        List<LoanBatchItem> items = loanService.applyBatch(LoanBatchAction.RETURN,
+                Arrays.asList(2L, 5L, 2L), Arrays.asList("0306406152", "123", "404"));
+
+        assertThat(items).containsExactly(
+                new LoanBatchItem("2", 2L, LoanBatchItem.Outcome.ALREADY_RETURNED),
+                new LoanBatchItem("5", 5L, LoanBatchItem.Outcome.NOT_FOUND),
+                new LoanBatchItem("2", 2L, LoanBatchItem.Outcome.DUPLICATE),
+                new LoanBatchItem("0306406152", 1L, LoanBatchItem.Outcome.RETURNED),
+                new LoanBatchItem("123", null, LoanBatchItem.Outcome.ALREADY_RETURNED),
+                new LoanBatchItem("404", null, LoanBatchItem.Outcome.NOT_FOUND));
+        Mockito.verify(repository, Mockito.times(1)).lockAndReturn(Mockito.anyCollection());
+        Mockito.verify(repository, Mockito.never()).lockAndRenew(Mockito.any(), Mockito.any());
+
+        ArgumentCaptor<LoanChangedEvent> event = ArgumentCaptor.forClass(LoanChangedEvent.class);
+        Mockito.verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getChange()).isEqualTo(LoanChangedEvent.Change.RETURNED);
+        assertThat(event.getValue().getBookIds()).containsExactly(101L);
+        assertThat(event.getValue().getIsbns()).containsExactly("978-0-306-40615-7");
+    }
+
+    @Test
+    @DisplayName("Should report a loan sent by id and by isbn once and the second reference as a duplicate")
+    public void returnBatchDuplicateTest(){
+        LoanIsbn open = loan(1, null, "978-0-306-40615-7", 9780306406157L);
+        Mockito.when(repository.findByBookIsbnKeys(Collections.singletonList(9780306406157L))).thenReturn(Collections.singletonList(open));
+        Mockito.when(repository.lockAndReturn(Collections.singletonList(1L))).thenReturn(Collections.singletonList(open));
+
+        List<LoanBatchItem> items = loanService.applyBatch(LoanBatchAction.RETURN,
+                Collections.singletonList(1L), Arrays.asList("978-0-306-40615-7", "0306406152"));
+
+        assertThat(items).containsExactly(
+                new LoanBatchItem("1", 1L, LoanBatchItem.Outcome.RETURNED),
+                new LoanBatchItem("978-0-306-40615-7", 1L, LoanBatchItem.Outcome.DUPLICATE),
+                new LoanBatchItem("0306406152", 1L, LoanBatchItem.Outcome.DUPLICATE));
+        Mockito.verify(repository, Mockito.times(1)).lockAndReturn(Collections.singletonList(1L));
+    }
+
+    @Test
+    @DisplayName("Should announce the lent book when saving a loan")
+    public void saveAnnouncesLoanTest(){
+        Loan loan = Loan.builder().book(Book.builder().id(1L).isbn("123").build()).customer("Fulano").build();
+        Mockito.when(repository.save(loan)).thenReturn(loan);
+
+        loanService.save(loan);
+
+        ArgumentCaptor<LoanChangedEvent> event = ArgumentCaptor.forClass(LoanChangedEvent.class);
+        Mockito.verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getChange()).isEqualTo(LoanChangedEvent.Change.CREATED);
+        assertThat(event.getValue().getBookIds()).containsExactly(1L);
+        assertThat(event.getValue().getIsbns()).containsExactly("123");
+    }
+
+    @Test
+    @DisplayName("Should refuse a book that is already loaned once the database confirms it")
+    public void saveLoanedBookTest(){
+        Book book = Book.builder().id(1L).isbn("123").build();
+        Mockito.when(repository.save(Mockito.any(Loan.class))).then(invocation -> invocation.getArgument(0));
+        Mockito.when(repository.existsOpenLoan(1L)).thenReturn(true);
+        loanService.save(Loan.builder().book(book).customer("Fulano").build());
+
+        Throwable exception = Assertions.catchThrowable(() -> loanService.save(Loan.builder().book(book).customer("Ciclano").build()));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        Mockito.verify(repository, Mockito.times(1)).save(Mockito.any(Loan.class));
+    }
+
+    @Test
+    @DisplayName("Should lend a book marked as loaned when the database has no open loan for it")
+    public void saveStaleLoanedBookTest(){
+        Book book = Book.builder().id(1L).isbn("123").build();
+        loanedBooks.tryCheckout(1L);
+        Loan loan = Loan.builder().book(book).customer("Fulano").build();
+        Mockito.when(repository.existsOpenLoan(1L)).thenReturn(false);
+        Mockito.when(repository.save(loan)).thenReturn(loan);
+
+        assertThat(loanService.save(loan)).isSameAs(loan);
+        assertThat(loanedBooks.isLoaned(1L)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should keep a book marked as loaned when a loan that did not reserve it is refused")
+    public void saveUnreservedRefusedTest(){
+        Book book = Book.builder().id(1L).isbn("123").build();
+        loanedBooks.tryCheckout(1L);
+        Mockito.when(repository.existsOpenLoan(1L)).thenReturn(false);
+        Mockito.when(repository.save(Mockito.any(Loan.class))).thenThrow(new DataIntegrityViolationException("ux_loan_open_book"));
+
+        Throwable exception = Assertions.catchThrowable(() -> loanService.save(Loan.builder().book(book).customer("Fulano").build()));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(loanedBooks.isLoaned(1L)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should give the book back when the database refuses the loan")
+    public void saveLoanedElsewhereTest(){
+        Book book = Book.builder().id(1L).isbn("123").build();
+        Mockito.when(repository.save(Mockito.any(Loan.class))).thenThrow(new DataIntegrityViolationException("ux_loan_open_book"));
+
+        Throwable exception = Assertions.catchThrowable(() -> loanService.save(Loan.builder().book(book).customer("Fulano").build()));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(loanedBooks.isLoaned(1L)).isFalse();
+        Mockito.verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    @DisplayName("Should renew open loans in chunks")
+    public void renewBatchInChunksTest(){
+        List<Long> ids = LongStream.rangeClosed(1, 800).boxed().collect(Collectors.toList());
+        Mockito.when(repository.lockAndRenew(Mockito.anyCollection(), Mockito.eq(LocalDate.now()))).thenAnswer(invocation -> {
+            List<Long> chunk = invocation.getArgument(0);
+            return chunk.stream().map(id -> loan(id, null, "123", null)).collect(Collectors.toList());
+        });
+
+        List<LoanBatchItem> items = loanService.applyBatch(LoanBatchAction.RENEW, ids, null);
+
+        assertThat(items).hasSize(800).allMatch(item -> item.getOutcome() == LoanBatchItem.Outcome.RENEWED);
+        Mockito.verify(repository, Mockito.times(2)).lockAndRenew(Mockito.anyCollection(), Mockito.eq(LocalDate.now()));
+        Mockito.verify(repository, Mockito.never()).lockAndReturn(Mockito.any());
+        Mockito.verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    @DisplayName("Should refuse a batch above the maximum size")
+    public void batchTooLargeTest(){
+        List<Long> ids = LongStream.rangeClosed(1, LoanServiceImpl.MAX_BATCH_ITEMS + 1).boxed().collect(Collectors.toList());
+
+        Throwable exception = Assertions.catchThrowable(() -> loanService.applyBatch(LoanBatchAction.RETURN, ids, null));
+
+        assertThat(exception).isInstanceOf(BusinessException.class);
+        Mockito.verifyNoInteractions(repository);
+    }
+}
@@ -0,0 +1,90 @@
+package com.monstro.librayapi.service.cache;
+
+import com.monstro.librayapi.model.projection.BookSummary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookReadCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final BookReadCache cache = new BookReadCache(true, Duration.ofMinutes(1), 2, clock::get);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Optional<BookSummary> load(long id) {
+        loads.incrementAndGet();
+        return Optional.of(new BookSummary(id, "title " + loads.get(), 1, "author", "isbn"));
+    }
+
+    private Page<BookSummary> loadPage() {
+        loads.incrementAndGet();
+        return new PageImpl<>(Collections.singletonList(new BookSummary(1L, "title", 1, "author", "isbn")));
+    }
+
+    @Test
+    @DisplayName("Should load a summary once until its ttl passes")
+    public void hitTest(){
+        Optional<BookSummary> first = cache.summary(1L, () -> load(1));
+        Optional<BookSummary> second = cache.summary(1L, () -> load(1));
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads.get()).isEqualTo(1);
+
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        cache.summary(1L, () -> load(1));
+
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should evict the changed summary and every page")
+    public void evictTest(){
+        cache.summary(1L, () -> load(1));
+        cache.summary(2L, () -> load(2));
+        cache.page("all", this::loadPage);
+
+        cache.evict(Collections.singletonList(1L));
+        cache.summary(1L, () -> load(1));
+        cache.summary(2L, () -> load(2));
+        cache.page("all", this::loadPage);
+
+        assertThat(loads.get()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Should not store a value loaded while an eviction happened")
+    public void raceWithEvictionTest(){
+        cache.summary(1L, () -> {
+            cache.evict(Collections.singletonList(1L));
+            return load(1);
+        });
+
+        Optional<BookSummary> reloaded = cache.summary(1L, () -> load(1));
+
+        assertThat(reloaded.get().getTitle()).isEqualTo("title 2");
+    }
+
+    @Test
+    @DisplayName("Should always load when disabled")
+    public void disabledTest(){
+        BookReadCache disabled = new BookReadCache(false, Duration.ofMinutes(1), 2, clock::get);
+
+        disabled.summary(1L, () -> load(1));
+        disabled.summary(1L, () -> load(1));
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+}
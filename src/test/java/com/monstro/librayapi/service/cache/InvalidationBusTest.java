@@ -0,0 +1,102 @@
+package com.monstro.librayapi.service.cache;
+
+import com.monstro.librayapi.LibraryApiApplication;
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.service.BookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two instances on one database, with caches on and the bus on loopback: after one instance updates a book, the
+ * other must stop answering with the old title within {@link #MAX_STALENESS}, for both the summary and the page.
+ */
+public class InvalidationBusTest {
+
+    private static final Duration MAX_STALENESS = Duration.ofMillis(500);
+    private static final int UPDATES = 20;
+
+    ConfigurableApplicationContext first;
+    ConfigurableApplicationContext second;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        int firstPort = freeUdpPort();
+        int secondPort = freeUdpPort();
+        first = start(firstPort, secondPort);
+        second = start(secondPort, firstPort);
+    }
+
+    @AfterEach
+    public void tearDown(){
+        if (first != null) {
+            first.close();
+        }
+        if (second != null) {
+            second.close();
+        }
+    }
+
+    private static int freeUdpPort() throws SocketException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static ConfigurableApplicationContext start(int port, int peerPort) {
+        return new SpringApplicationBuilder(LibraryApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:invalidation;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--library.cache.enabled=true",
+                        "--library.invalidation.port=" + port,
+                        "--library.invalidation.bind-address=127.0.0.1",
+                        "--library.invalidation.peers=127.0.0.1:" + peerPort);
+    }
+
+    @Test
+    @DisplayName("Should see the other instance's updates within the maximum staleness")
+    public void stalenessTest() throws Exception {
+        BookService writer = second.getBean(BookService.class);
+        BookService reader = first.getBean(BookService.class);
+        Book filter = Book.builder().author("invalidation").build();
+        PageRequest page = PageRequest.of(0, 10);
+
+        Long id = writer.save(Book.builder().title("title 0").author("invalidation").isbn("invalidation-1").build()).getId();
+
+        long maxStalenessNanos = 0;
+        for (int i = 1; i <= UPDATES; i++) {
+            // cached on the reader before the change
+            assertThat(reader.getSummaryById(id).get().getTitle()).isEqualTo("title " + (i - 1));
+            assertThat(reader.findSummaries(filter, page).getContent().get(0).getTitle()).isEqualTo("title " + (i - 1));
+
+            String title = "title " + i;
+            writer.updateById(id, Book.builder().title(title).author("invalidation").isbn("invalidation-1").build());
+            long committed = System.nanoTime();
+
+            long deadline = committed + Duration.ofSeconds(5).toNanos();
+            while ((!reader.getSummaryById(id).get().getTitle().equals(title)
+                    || !reader.findSummaries(filter, page).getContent().get(0).getTitle().equals(title))
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            maxStalenessNanos = Math.max(maxStalenessNanos, System.nanoTime() - committed);
+        }
+
+        assertThat(Duration.ofNanos(maxStalenessNanos)).as("max staleness over %d updates", UPDATES).isLessThan(MAX_STALENESS);
+        assertThat(first.getBean(BookReadCache.class).getHits()).isGreaterThan(0);
+        assertThat(first.getBean(InvalidationBus.class).getReceived()).isGreaterThanOrEqualTo(UPDATES);
+    }
+}
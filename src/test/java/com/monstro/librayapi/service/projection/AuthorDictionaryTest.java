@@ -0,0 +1,76 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.entity.Author;
+import com.monstro.librayapi.model.repository.AuthorRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuthorDictionaryTest {
+
+    AuthorRepository repository;
+    AuthorDictionary dictionary;
+
+    @BeforeEach
+    public void setUp(){
+        repository = Mockito.mock(AuthorRepository.class);
+        Mockito.when(repository.findTop1000ByIdGreaterThanOrderByIdAsc(0))
+                .thenReturn(Arrays.asList(new Author(1, "Herbert"), new Author(5, "Austen"), new Author(9, "Herbert")));
+        Mockito.when(repository.findTop1000ByIdGreaterThanOrderByIdAsc(9))
+                .thenReturn(Collections.emptyList());
+
+        dictionary = new AuthorDictionary(repository, Mockito.mock(PlatformTransactionManager.class), Duration.ofHours(1));
+        dictionary.load();
+    }
+
+    @AfterEach
+    public void tearDown(){
+        dictionary.destroy();
+    }
+
+    @Test
+    @DisplayName("Should map the loaded authors both ways, one name instance per author")
+    public void loadTest(){
+        assertThat(dictionary.size()).isEqualTo(3);
+        assertThat(dictionary.idOf("Austen")).isEqualTo(5);
+        assertThat(dictionary.idOf("Herbert")).isEqualTo(1);
+        assertThat(dictionary.nameOf(9)).isSameAs(dictionary.nameOf(1)).isEqualTo("Herbert");
+        assertThat(dictionary.nameOf(null)).isNull();
+        Mockito.verify(repository, Mockito.never()).save(Mockito.any(Author.class));
+    }
+
+    @Test
+    @DisplayName("Should match every id of the authors containing the value, ignoring case")
+    public void idsContainingTest(){
+        assertThat(dictionary.idsContaining("HER")).containsExactly(1, 9);
+        assertThat(dictionary.idsContaining("e")).containsExactly(1, 5, 9);
+        assertThat(dictionary.idsContaining("tolkien")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should create an unknown author once and read an unknown id once")
+    public void unknownAuthorTest(){
+        Mockito.when(repository.save(Mockito.any(Author.class))).thenReturn(new Author(12, "Tolkien"));
+        Mockito.when(repository.findById(20)).thenReturn(Optional.of(new Author(20, "Le Guin")));
+
+        assertThat(dictionary.idOf("Tolkien")).isEqualTo(12);
+        assertThat(dictionary.idOf("Tolkien")).isEqualTo(12);
+        assertThat(dictionary.nameOf(20)).isEqualTo("Le Guin");
+        assertThat(dictionary.nameOf(20)).isEqualTo("Le Guin");
+        assertThat(dictionary.idsContaining("guin")).containsExactly(20);
+
+        Mockito.verify(repository, Mockito.times(1)).findFirstByNameOrderByIdAsc("Tolkien");
+        Mockito.verify(repository, Mockito.times(1)).save(Mockito.any(Author.class));
+        Mockito.verify(repository, Mockito.times(1)).findById(20);
+    }
+}
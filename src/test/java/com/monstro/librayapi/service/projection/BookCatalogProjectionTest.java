@@ -0,0 +1,129 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.service.BookChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookCatalogProjectionTest {
+
+    BookRepository repository;
+    BookCatalogProjection projection;
+
+    @BeforeEach
+    public void setUp(){
+        repository = Mockito.mock(BookRepository.class);
+        Mockito.when(repository.findTop1000ByIdGreaterThanOrderByIdAsc(0L))
+                .thenReturn(Arrays.asList(book(1, "Dune", "Herbert", "111"), book(2, "Emma", "Austen", "222")));
+        Mockito.when(repository.findTop1000ByIdGreaterThanOrderByIdAsc(2L))
+                .thenReturn(Collections.emptyList());
+
+        projection = new BookCatalogProjection(repository, Mockito.mock(AuthorDictionary.class));
+        projection.load();
+    }
+
+    private Book book(long id, String title, String author, String isbn) {
+        return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+    }
+
+    private void publish(BookChangedEvent.Change change, Book book) {
+        projection.onBookChanged(new BookChangedEvent(change, book.getId(), book));
+    }
+
+    @Test
+    @DisplayName("Should count the books loaded at startup")
+    public void loadTest(){
+        BookFacets facets = projection.facets(new Book(), 10);
+
+        assertThat(facets.getTotal()).isEqualTo(2);
+        assertThat(facets.getAuthors()).containsExactly(
+                new BookFacets.FacetCount("Austen", 1), new BookFacets.FacetCount("Herbert", 1));
+    }
+
+    @Test
+    @DisplayName("Should follow created, updated and deleted books")
+    public void incrementalUpdateTest(){
+        publish(BookChangedEvent.Change.CREATED, book(3, "Persuasion", "Austen", "333"));
+        publish(BookChangedEvent.Change.UPDATED, book(1, "Dune Messiah", "Herbert", "111"));
+        publish(BookChangedEvent.Change.CREATED, book(4, "Children of Dune", "Herbert", "444"));
+        publish(BookChangedEvent.Change.DELETED, book(2, "Emma", "Austen", "222"));
+
+        BookFacets facets = projection.facets(new Book(), 10);
+
+        assertThat(facets.getTotal()).isEqualTo(3);
+        assertThat(facets.getAuthors()).containsExactly(
+                new BookFacets.FacetCount("Herbert", 2), new BookFacets.FacetCount("Austen", 1));
+        assertThat(facets.getTitles()).extracting(BookFacets.FacetCount::getValue)
+                .containsExactly("Children of Dune", "Dune Messiah", "Persuasion");
+    }
+
+    @Test
+    @DisplayName("Should skip updates older than the one applied or arriving after the delete")
+    public void outOfOrderEventsTest(){
+        Book newer = book(1, "Dune Messiah", "Herbert", "111");
+        newer.setVersion(2);
+        Book older = book(1, "Dune", "Herbert", "111");
+        older.setVersion(1);
+        publish(BookChangedEvent.Change.UPDATED, newer);
+        publish(BookChangedEvent.Change.UPDATED, older);
+
+        Book deleted = book(2, "Emma", "Austen", "222");
+        deleted.setVersion(1);
+        publish(BookChangedEvent.Change.DELETED, deleted);
+        Book late = book(2, "Emma", "Austen", "222");
+        late.setVersion(2);
+        publish(BookChangedEvent.Change.UPDATED, late);
+
+        BookFacets facets = projection.facets(new Book(), 10);
+
+        assertThat(facets.getTotal()).isEqualTo(1);
+        assertThat(facets.getTitles()).containsExactly(new BookFacets.FacetCount("Dune Messiah", 1));
+        assertThat(projection.matchingIds(new Book()).contains(LoanedBooks.bit(2L))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should count only the books matching the filter ignoring case")
+    public void filteredFacetsTest(){
+        publish(BookChangedEvent.Change.CREATED, book(3, "Dune Messiah", "Herbert", "333"));
+        publish(BookChangedEvent.Change.CREATED, book(4, "Sense and Sensibility", "Austen", "444"));
+
+        BookFacets facets = projection.facets(Book.builder().title("DUNE").build(), 10);
+
+        assertThat(facets.getTotal()).isEqualTo(2);
+        assertThat(facets.getAuthors()).containsExactly(new BookFacets.FacetCount("Herbert", 2));
+    }
+
+    @Test
+    @DisplayName("Should return only the top values")
+    public void limitTest(){
+        publish(BookChangedEvent.Change.CREATED, book(3, "Persuasion", "Austen", "333"));
+
+        BookFacets facets = projection.facets(new Book(), 1);
+
+        assertThat(facets.getAuthors()).containsExactly(new BookFacets.FacetCount("Austen", 2));
+    }
+
+    @Test
+    @DisplayName("Should complete authors and titles by prefix following changes")
+    public void autocompleteTest(){
+        publish(BookChangedEvent.Change.CREATED, book(3, "Dune Messiah", "Herbert", "333"));
+        publish(BookChangedEvent.Change.CREATED, book(4, "Emma", "Austen", "444"));
+        publish(BookChangedEvent.Change.UPDATED, book(1, "Dune", "Hesse", "111"));
+
+        BookCompletions completions = projection.complete("DU", 10);
+
+        assertThat(completions.getTitles()).containsExactly(
+                new BookFacets.FacetCount("Dune", 1), new BookFacets.FacetCount("Dune Messiah", 1));
+        assertThat(projection.complete("he", 10).getAuthors()).containsExactly(
+                new BookFacets.FacetCount("Herbert", 1), new BookFacets.FacetCount("Hesse", 1));
+        assertThat(projection.complete("", 1).getTitles()).containsExactly(new BookFacets.FacetCount("Emma", 2));
+    }
+}
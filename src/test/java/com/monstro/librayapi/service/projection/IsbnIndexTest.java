@@ -0,0 +1,100 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.entity.Book;
+import com.monstro.librayapi.model.projection.BookIsbnKey;
+import com.monstro.librayapi.model.repository.BookRepository;
+import com.monstro.librayapi.service.BookChangedEvent;
+import com.monstro.librayapi.util.Isbn;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IsbnIndexTest {
+
+    static final String ISBN = "9780306406157";
+    static final String OTHER_ISBN = "9780140449136";
+
+    BookRepository repository;
+    IsbnIndex index;
+
+    @BeforeEach
+    public void setUp(){
+        repository = Mockito.mock(BookRepository.class);
+        BookIsbnKey row = Mockito.mock(BookIsbnKey.class);
+        Mockito.when(row.getId()).thenReturn(3L);
+        Mockito.when(row.getIsbnKey()).thenReturn(Isbn.toIsbn13(OTHER_ISBN));
+        Mockito.when(repository.findTop1000ByIsbnKeyNotNullAndIdGreaterThanOrderByIdAsc(0L))
+                .thenReturn(Collections.singletonList(row));
+        Mockito.when(repository.findTop1000ByIsbnKeyNotNullAndIdGreaterThanOrderByIdAsc(3L))
+                .thenReturn(Collections.emptyList());
+
+        index = new IsbnIndex(repository);
+        index.load();
+    }
+
+    @Test
+    @DisplayName("Should follow the loaded books, creates, ISBN changes and deletes")
+    public void followTest(){
+        assertThat(index.idOf(Isbn.toIsbn13(OTHER_ISBN))).isEqualTo(3L);
+
+        index.onBookChanged(changed(BookChangedEvent.Change.CREATED, 5L, ISBN));
+        assertThat(index.idOf(Isbn.toIsbn13(ISBN))).isEqualTo(5L);
+
+        index.onBookChanged(changed(BookChangedEvent.Change.UPDATED, 3L, "not an isbn"));
+        assertThat(index.idOf(Isbn.toIsbn13(OTHER_ISBN))).isEqualTo(IsbnIndex.NOT_FOUND);
+
+        index.onBookChanged(new BookChangedEvent(BookChangedEvent.Change.DELETED, 5L, null));
+        assertThat(index.idOf(Isbn.toIsbn13(ISBN))).isEqualTo(IsbnIndex.NOT_FOUND);
+        assertThat(index.size()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Should skip the update of a book that arrives after its delete")
+    public void lateUpdateTest(){
+        index.onBookChanged(changed(BookChangedEvent.Change.CREATED, 5L, ISBN));
+        index.onBookChanged(new BookChangedEvent(BookChangedEvent.Change.DELETED, 5L, null));
+        index.onBookChanged(changed(BookChangedEvent.Change.UPDATED, 5L, ISBN));
+        assertThat(index.idOf(Isbn.toIsbn13(ISBN))).isEqualTo(IsbnIndex.NOT_FOUND);
+
+        index.onBookChanged(changed(BookChangedEvent.Change.CREATED, 9L, ISBN));
+        index.onBookChanged(changed(BookChangedEvent.Change.UPDATED, 5L, ISBN));
+        assertThat(index.idOf(Isbn.toIsbn13(ISBN))).isEqualTo(9L);
+    }
+
+    @Test
+    @DisplayName("Should skip an update older than the one applied")
+    public void olderUpdateTest(){
+        index.onBookChanged(changed(BookChangedEvent.Change.CREATED, 5L, ISBN));
+        index.onBookChanged(changed(BookChangedEvent.Change.UPDATED, 5L, OTHER_ISBN, 2));
+        index.onBookChanged(changed(BookChangedEvent.Change.UPDATED, 5L, ISBN, 1));
+
+        assertThat(index.idOf(Isbn.toIsbn13(OTHER_ISBN))).isEqualTo(5L);
+        assertThat(index.idOf(Isbn.toIsbn13(ISBN))).isEqualTo(IsbnIndex.NOT_FOUND);
+    }
+
+    @Test
+    @DisplayName("Should follow ids beyond the int range")
+    public void longIdTest(){
+        long id = Integer.MAX_VALUE + 10L;
+
+        index.onBookChanged(changed(BookChangedEvent.Change.CREATED, id, ISBN));
+        assertThat(index.idOf(Isbn.toIsbn13(ISBN))).isEqualTo(id);
+
+        index.onBookChanged(new BookChangedEvent(BookChangedEvent.Change.DELETED, id, null));
+        index.onBookChanged(changed(BookChangedEvent.Change.UPDATED, id, ISBN, 1));
+        assertThat(index.idOf(Isbn.toIsbn13(ISBN))).isEqualTo(IsbnIndex.NOT_FOUND);
+    }
+
+    private static BookChangedEvent changed(BookChangedEvent.Change change, Long id, String isbn) {
+        return changed(change, id, isbn, 0);
+    }
+
+    private static BookChangedEvent changed(BookChangedEvent.Change change, Long id, String isbn, long version) {
+        return new BookChangedEvent(change, id, Book.builder().id(id).isbn(isbn).version(version).build());
+    }
+}
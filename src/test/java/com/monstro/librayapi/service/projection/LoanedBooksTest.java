@@ -0,0 +1,66 @@
+package com.monstro.librayapi.service.projection;
+
+import com.monstro.librayapi.model.repository.LoanRepository;
+import com.monstro.librayapi.service.LoanChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoanedBooksTest {
+
+    LoanRepository repository;
+    LoanedBooks loanedBooks;
+
+    @BeforeEach
+    public void setUp(){
+        repository = Mockito.mock(LoanRepository.class);
+        Mockito.when(repository.findOpenLoanBookIds(Mockito.eq(0L), Mockito.any(PageRequest.class)))
+                .thenReturn(Arrays.asList(7L, 3L));
+        Mockito.when(repository.findOpenLoanBookIds(Mockito.eq(7L), Mockito.any(PageRequest.class)))
+                .thenReturn(Collections.emptyList());
+
+        loanedBooks = new LoanedBooks(repository);
+        loanedBooks.load();
+    }
+
+    @Test
+    @DisplayName("Should load the books with open loans")
+    public void loadTest(){
+        assertThat(loanedBooks.isLoaned(3L)).isTrue();
+        assertThat(loanedBooks.isLoaned(7L)).isTrue();
+        assertThat(loanedBooks.isLoaned(5L)).isFalse();
+        assertThat(loanedBooks.getLoanedCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should check a book out once until it is returned")
+    public void checkoutTest(){
+        assertThat(loanedBooks.tryCheckout(5L)).isTrue();
+        assertThat(loanedBooks.tryCheckout(5L)).isFalse();
+        assertThat(loanedBooks.tryCheckout(3L)).isFalse();
+
+        loanedBooks.onLoanChanged(new LoanChangedEvent(LoanChangedEvent.Change.RETURNED,
+                Arrays.asList(5L, 3L), Arrays.asList("5", "3")));
+
+        assertThat(loanedBooks.tryCheckout(3L)).isTrue();
+        assertThat(loanedBooks.isLoaned(5L)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should remove the loaned books from a set of ids")
+    public void removeLoanedTest(){
+        RoaringBitmap ids = RoaringBitmap.bitmapOf(1, 3, 5, 7);
+
+        loanedBooks.removeLoaned(ids);
+
+        assertThat(ids.toArray()).containsExactly(1, 5);
+    }
+}
@@ -0,0 +1,105 @@
+package com.monstro.librayapi.service.projection;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrefixCompletionTest {
+
+    StringDictionary dictionary;
+    PrefixCompletion completion;
+    int[] counts;
+
+    @BeforeEach
+    public void setUp(){
+        dictionary = new StringDictionary();
+        completion = new PrefixCompletion(dictionary);
+        counts = new int[64];
+        count("Dune", 3);
+        count("dune messiah", 5);
+        count("Dracula", 1);
+        count("Emma", 4);
+        count("Dubliners", 0);
+        completion.rebuild(counts);
+    }
+
+    private int count(String value, int count) {
+        int code = dictionary.encode(value);
+        counts[code] = count;
+        return code;
+    }
+
+    private List<BookFacets.FacetCount> complete(String prefix, int limit) {
+        return completion.complete(prefix, limit);
+    }
+
+    @Test
+    @DisplayName("Should return the values of the prefix by count ignoring case and zero counts")
+    public void prefixRangeTest(){
+        assertThat(complete("du", 10)).containsExactly(
+                new BookFacets.FacetCount("dune messiah", 5), new BookFacets.FacetCount("Dune", 3));
+        assertThat(complete("d", 2)).containsExactly(
+                new BookFacets.FacetCount("dune messiah", 5), new BookFacets.FacetCount("Dune", 3));
+        assertThat(complete("x", 10)).isEmpty();
+        assertThat(complete("", 1)).containsExactly(new BookFacets.FacetCount("dune messiah", 5));
+    }
+
+    @Test
+    @DisplayName("Should order ties alphabetically")
+    public void tieTest(){
+        completion.set(dictionary.codeOf("Dracula"), 3);
+
+        assertThat(complete("d", 10)).containsExactly(
+                new BookFacets.FacetCount("dune messiah", 5),
+                new BookFacets.FacetCount("Dracula", 3),
+                new BookFacets.FacetCount("Dune", 3));
+    }
+
+    @Test
+    @DisplayName("Should follow count changes and values added after the sort")
+    public void incrementalTest(){
+        completion.set(dictionary.codeOf("dune messiah"), 0);
+        completion.set(dictionary.encode("Dune Chronicles"), 2);
+        completion.set(dictionary.encode("Dungeon"), 9);
+
+        assertThat(complete("dun", 10)).containsExactly(
+                new BookFacets.FacetCount("Dungeon", 9),
+                new BookFacets.FacetCount("Dune", 3),
+                new BookFacets.FacetCount("Dune Chronicles", 2));
+    }
+
+    @Test
+    @DisplayName("Should fold a full delta into the sorted values")
+    public void deltaRebuildTest(){
+        for (int i = 0; i <= PrefixCompletion.DELTA_LIMIT; i++) {
+            completion.set(dictionary.encode(String.format("Title %05d", i)), i);
+        }
+
+        assertThat(complete("title 0409", 3)).containsExactly(
+                new BookFacets.FacetCount("Title 04096", 4096),
+                new BookFacets.FacetCount("Title 04095", 4095),
+                new BookFacets.FacetCount("Title 04094", 4094));
+        assertThat(complete("du", 10)).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Should merge a full delta between the sorted values as a full sort would")
+    public void deltaMergeTest(){
+        for (int i = 0; i <= PrefixCompletion.DELTA_LIMIT; i++) {
+            String value = (i % 3 == 0 ? "Dr " : i % 3 == 1 ? "Dun " : "A ") + (i * 7919 % 10007);
+            counts = Arrays.copyOf(counts, Math.max(counts.length, dictionary.size() + 1));
+            completion.set(count(value, i % 50), i % 50);
+        }
+        PrefixCompletion sorted = new PrefixCompletion(dictionary);
+        sorted.rebuild(counts);
+
+        for (String prefix : new String[]{"", "d", "dr", "dun", "dune", "a 1", "e"}) {
+            assertThat(complete(prefix, 20)).as("prefix '%s'", prefix).isEqualTo(sorted.complete(prefix, 20));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.monstro.librayapi.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IsbnTest {
+
+    @Test
+    @DisplayName("Should give the same key for every form of an isbn")
+    public void sameKeyForEveryFormTest(){
+        assertThat(Isbn.toIsbn13("9780306406157")).isEqualTo(9780306406157L);
+        assertThat(Isbn.toIsbn13("978-0-306-40615-7")).isEqualTo(9780306406157L);
+        assertThat(Isbn.toIsbn13("0306406152")).isEqualTo(9780306406157L);
+        assertThat(Isbn.toIsbn13("0 306 40615 2")).isEqualTo(9780306406157L);
+    }
+
+    @Test
+    @DisplayName("Should accept an isbn-10 with X check digit")
+    public void isbn10WithXCheckDigitTest(){
+        assertThat(Isbn.toIsbn13("080442957X")).isEqualTo(9780804429573L);
+        assertThat(Isbn.toIsbn13("0-8044-2957-x")).isEqualTo(9780804429573L);
+    }
+
+    @Test
+    @DisplayName("Should reject values that are not isbns")
+    public void invalidIsbnTest(){
+        assertThat(Isbn.toIsbn13(null)).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("")).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("11234")).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("9780306406158")).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("0306406153")).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("97803064061570")).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("1230306406153")).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("X306406152")).isEqualTo(Isbn.INVALID);
+        assertThat(Isbn.toIsbn13("isbn-7")).isEqualTo(Isbn.INVALID);
+    }
+}